@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.benchmark;
+
+import io.yupiik.logging.jul.YupiikLoggers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// disabled log statements (FINE when the logger is at INFO level), yupiik logger versus a plain JUL logger
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelBenchmark {
+    private Logger yupiik;
+    private Logger jul;
+
+    @Setup
+    public void setup() {
+        final var loggers = new YupiikLoggers() {
+            @Override
+            public String getProperty(final String name) {
+                return null; // INFO level, no handler
+            }
+        };
+        yupiik = loggers.getLogger("benchmark.level", null);
+        jul = Logger.getAnonymousLogger();
+        jul.setLevel(Level.INFO);
+    }
+
+    @Benchmark
+    public boolean yupiikIsLoggable() {
+        return yupiik.isLoggable(Level.FINE);
+    }
+
+    @Benchmark
+    public void yupiikFine() {
+        yupiik.fine("disabled");
+    }
+
+    @Benchmark
+    public void yupiikLogLevel() {
+        yupiik.log(Level.FINE, "disabled {0}", this);
+    }
+
+    @Benchmark
+    public boolean julIsLoggable() {
+        return jul.isLoggable(Level.FINE);
+    }
+
+    @Benchmark
+    public void julFine() {
+        jul.fine("disabled");
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.benchmark;
+
+import io.yupiik.logging.jul.YupiikLoggers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// startup like case: an application creating one logger per class
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LoggerCreationBenchmark {
+    private static final int LOGGERS = 50_000;
+
+    private final String[] names = IntStream.range(0, LOGGERS)
+            .mapToObj(i -> "com.company.module" + (i % 20) + ".package" + (i % 1_000) + ".Class" + i)
+            .toArray(String[]::new);
+
+    private YupiikLoggers loggers;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        loggers = new YupiikLoggers();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        loggers.close();
+        loggers = null;
+        System.gc(); // loggers are big, don't measure the collection of the previous iteration
+    }
+
+    @Benchmark
+    public void create50k(final Blackhole blackhole) {
+        for (final var name : names) {
+            blackhole.consume(loggers.getLogger(name, null));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+// immutable view of the configuration, created on each (re)read of the configuration so lookups are plain map gets:
+// - environment variable names are only translated (without regex) when the hash of the translated name matches a variable,
+// - inherited values (logger levels) are resolved once per logger name segment in a trie (system properties stay live).
+final class ConfigurationSnapshot {
+    private final Map<String, String> configuration;
+    private final Map<String, String> environment;
+    private final int[] environmentHashes; // sorted hashes of the variable names to skip most lookups without allocation
+    private final Node inherited = new Node();
+
+    ConfigurationSnapshot(final Map<String, String> configuration, final Map<String, String> environment) {
+        this.configuration = Map.copyOf(configuration);
+        this.environment = environment;
+        this.environmentHashes = environment.keySet().stream().mapToInt(String::hashCode).sorted().toArray();
+    }
+
+    /**
+     * @param name the property name.
+     * @return the value from the environment (name in uppercase with non alphanumeric characters replaced by {@code _}) or the configuration.
+     */
+    String get(final String name) {
+        final var env = fromEnvironment(name);
+        return env != null ? env : configuration.get(name);
+    }
+
+    /**
+     * Same as looking up {@code <parent><suffix>} for the parents of the name ({@code a.b} then {@code a} for {@code a.b.c})
+     * and finally {@code <suffix>}. System properties are read on each call so they can change at runtime
+     * but the environment and configuration values are immutable and read once per parent.
+     * The name itself is not memoized since leaf loggers are the vast majority and would make the cache
+     * as big as the logger population.
+     *
+     * @param name   the logger name.
+     * @param suffix the property suffix (for example {@code .level}).
+     * @return the first value found or {@code null} for the root logger.
+     */
+    String getFromParents(final String name, final String suffix) {
+        if (name.isEmpty()) {
+            return null;
+        }
+        final int last = name.lastIndexOf('.');
+        var node = inherited;
+        var value = inherited(node, suffix, suffix, null);
+        int start = 0;
+        while (start < last) {
+            final int end = name.indexOf('.', start == 0 ? 1 : start + 1);
+            node = node.child(name.substring(start, end));
+            value = inherited(node, suffix, name.substring(0, end) + suffix, value);
+            start = end;
+        }
+        return value;
+    }
+
+    /**
+     * Same as {@link #getFromParents(String, String)} for a custom lookup, nothing is memoized.
+     *
+     * @param name   the logger name.
+     * @param suffix the property suffix (for example {@code .level}).
+     * @param lookup how to read a property.
+     * @return the first value found or {@code null} for the root logger.
+     */
+    static String getFromParents(final String name, final String suffix, final Function<String, String> lookup) {
+        if (name.isEmpty()) {
+            return null;
+        }
+        for (int end = name.lastIndexOf('.'); end > 0; end = name.lastIndexOf('.', end - 1)) {
+            final var value = lookup.apply(name.substring(0, end) + suffix);
+            if (value != null) {
+                return value;
+            }
+        }
+        return lookup.apply(suffix);
+    }
+
+    private String inherited(final Node node, final String suffix, final String key, final String parentValue) {
+        final var system = System.getProperty(key);
+        if (system != null) {
+            return system;
+        }
+        final var own = node.value(suffix, key, this::get);
+        return own != null ? own : parentValue;
+    }
+
+    private String fromEnvironment(final String name) {
+        if (environmentHashes.length == 0 || Arrays.binarySearch(environmentHashes, environmentNameHash(name)) < 0) {
+            return null;
+        }
+        return environment.get(toEnvironmentName(name));
+    }
+
+    // same as [^A-Za-z0-9] replaced by _ then uppercased
+    static String toEnvironmentName(final String name) {
+        final var out = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); ) {
+            final int c = name.codePointAt(i);
+            out.append(toEnvironmentChar(c));
+            i += Character.charCount(c);
+        }
+        return out.toString();
+    }
+
+    // String#hashCode() of toEnvironmentName(name)
+    static int environmentNameHash(final String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); ) {
+            final int c = name.codePointAt(i);
+            hash = 31 * hash + toEnvironmentChar(c);
+            i += Character.charCount(c);
+        }
+        return hash;
+    }
+
+    private static char toEnvironmentChar(final int c) {
+        if (c >= 'a' && c <= 'z') {
+            return (char) (c - 'a' + 'A');
+        }
+        if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            return (char) c;
+        }
+        return '_';
+    }
+
+    // maps are lazily created and values are stored as suffix/value pairs since there are very few suffixes,
+    // this keeps the trie small when there are a lot of packages
+    private static class Node {
+        private static final Object MISSING = new Object();
+
+        private volatile ConcurrentMap<String, Node> children;
+        private volatile Object[] values = new Object[0];
+
+        private Node child(final String segment) {
+            var current = children;
+            if (current == null) {
+                synchronized (this) {
+                    current = children;
+                    if (current == null) {
+                        current = new ConcurrentHashMap<>(4);
+                        children = current;
+                    }
+                }
+            }
+            final var existing = current.get(segment);
+            return existing != null ? existing : current.computeIfAbsent(segment, k -> new Node());
+        }
+
+        private String value(final String suffix, final String key, final Function<String, String> lookup) {
+            final var current = values;
+            for (int i = 0; i < current.length; i += 2) {
+                if (suffix.equals(current[i])) {
+                    return current[i + 1] == MISSING ? null : String.class.cast(current[i + 1]);
+                }
+            }
+            final var value = lookup.apply(key);
+            synchronized (this) {
+                final var updated = Arrays.copyOf(values, values.length + 2);
+                updated[updated.length - 2] = suffix;
+                updated[updated.length - 1] = value == null ? MISSING : value;
+                values = updated;
+            }
+            return value;
+        }
+    }
+}
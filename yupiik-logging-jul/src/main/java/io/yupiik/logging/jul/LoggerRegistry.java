@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul;
+
+import io.yupiik.logging.jul.logger.YupiikLogger;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// holds the loggers by name:
+// - configured loggers (own level, handlers, filter, useParentHandlers) are always strongly held since their state can't be recomputed,
+// - others are weakly held (retention=weak or once there are max strongly held loggers) so once the caller dropped them
+//   they are collected and recreated on demand.
+// note: a logger must always be registered, LogManager#demandLogger loops until getLogger(name) returns it.
+final class LoggerRegistry {
+    private final ConcurrentMap<String, Object> loggers = new ConcurrentHashMap<>(); // YupiikLogger or NamedReference
+    private final ReferenceQueue<YupiikLogger> queue = new ReferenceQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger weakSize = new AtomicInteger();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder collected = new LongAdder();
+    private volatile boolean weak;
+    private volatile int max;
+
+    // called once the configuration is read (first logger creation)
+    void configure(final boolean weak, final int max) {
+        this.weak = weak;
+        this.max = max;
+    }
+
+    YupiikLogger get(final String name) {
+        final var value = loggers.get(name);
+        if (value == null || value instanceof YupiikLogger) {
+            return (YupiikLogger) value;
+        }
+        return ((NamedReference) value).get();
+    }
+
+    /**
+     * @param logger     the logger to register.
+     * @param configured if the logger has its own configuration (or must not be collected), it is then always strongly registered.
+     * @return the registered logger, it can be another instance if a concurrent registration won.
+     */
+    YupiikLogger register(final YupiikLogger logger, final boolean configured) {
+        expunge();
+        final var name = logger.getName();
+        final boolean strong = configured || (!weak && (max <= 0 || size.get() - weakSize.get() < max));
+        final Object value = strong ? logger : new NamedReference(name, logger, queue);
+        while (true) {
+            final var existing = loggers.putIfAbsent(name, value);
+            if (existing == null) {
+                created.increment();
+                size.incrementAndGet();
+                if (!strong) {
+                    weakSize.incrementAndGet();
+                }
+                return logger;
+            }
+            if (existing instanceof YupiikLogger) {
+                return (YupiikLogger) existing;
+            }
+            final var existingLogger = ((NamedReference) existing).get();
+            if (existingLogger != null) {
+                return existingLogger;
+            }
+            if (loggers.replace(name, existing, value)) { // collected but not yet expunged
+                created.increment();
+                collected.increment();
+                if (strong) {
+                    weakSize.decrementAndGet();
+                }
+                return logger;
+            }
+        }
+    }
+
+    Stream<String> names() {
+        return loggers.keySet().stream();
+    }
+
+    Stream<YupiikLogger> loggers() {
+        return loggers.values().stream()
+                .map(it -> it instanceof YupiikLogger ? (YupiikLogger) it : ((NamedReference) it).get())
+                .filter(Objects::nonNull);
+    }
+
+    Map<String, Long> metrics() {
+        expunge();
+        final var metrics = new LinkedHashMap<String, Long>();
+        metrics.put("registered", (long) size.get());
+        metrics.put("weak", (long) weakSize.get());
+        metrics.put("created", created.sum());
+        metrics.put("collected", collected.sum());
+        return metrics;
+    }
+
+    private void expunge() {
+        Reference<? extends YupiikLogger> ref;
+        while ((ref = queue.poll()) != null) {
+            if (loggers.remove(((NamedReference) ref).name, ref)) {
+                size.decrementAndGet();
+                weakSize.decrementAndGet();
+                collected.increment();
+            }
+        }
+    }
+
+    private static class NamedReference extends WeakReference<YupiikLogger> {
+        private final String name;
+
+        private NamedReference(final String name, final YupiikLogger referent, final ReferenceQueue<YupiikLogger> queue) {
+            super(referent, queue);
+            this.name = name;
+        }
+    }
+}
@@ -15,11 +15,15 @@
  */
 package io.yupiik.logging.jul;
 
+import io.yupiik.logging.jul.api.StructuredContext;
+import io.yupiik.logging.jul.formatter.IdGenerators;
 import io.yupiik.logging.jul.formatter.InlineFormatter;
 import io.yupiik.logging.jul.formatter.JsonFormatter;
 import io.yupiik.logging.jul.formatter.PatternFormatter;
+import io.yupiik.logging.jul.formatter.ThrowableRenderer;
 import io.yupiik.logging.jul.handler.AsyncHandler;
 import io.yupiik.logging.jul.handler.LocalFileHandler;
+import io.yupiik.logging.jul.handler.RoutingFileHandler;
 import io.yupiik.logging.jul.handler.StandardHandler;
 import io.yupiik.logging.jul.handler.StdoutHandler;
 import io.yupiik.logging.jul.logger.YupiikLogger;
@@ -32,8 +36,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
@@ -48,26 +54,26 @@ import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static java.util.Collections.enumeration;
 import static java.util.Locale.ROOT;
 import static java.util.Optional.ofNullable;
 import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
 // actual LogManager but detached from JUL inheritance, however it should look like JUL in terms of config
 //
 // note: it is not a 100% complete impl yet, it mainly targets docker containers for now and some features as config listeners are ignored
 public class YupiikLoggers {
-    private final Pattern posix = Pattern.compile("[^A-Za-z0-9]");
-
     public static class State { // makes it easy to reset at once
         private final ConcurrentMap<Runnable, Runnable> listeners = new ConcurrentHashMap<>();
-        private final ConcurrentMap<String, YupiikLogger> loggers = new ConcurrentHashMap<>();
+        private final LoggerRegistry loggers = new LoggerRegistry();
         private final ConcurrentMap<String, String> configuration = new ConcurrentHashMap<>();
         private final AtomicBoolean configurationRead = new AtomicBoolean(false);
+        private volatile boolean configurationLoaded; // set once readConfiguration() completed to skip its lock
+        private volatile ConfigurationSnapshot snapshot = new ConfigurationSnapshot(Map.of(), System.getenv());
         private volatile Thread shutdownHook;
 
         private State() {
@@ -77,6 +83,9 @@ public class YupiikLoggers {
 
     private State state = new State();
 
+    // when getProperty is overridden the memoized snapshot does not reflect it so inherited values are looked up each time
+    private final boolean customProperties = overridesGetProperty(getClass());
+
     public synchronized void close() {
         if (state.shutdownHook != null) {
             state.shutdownHook.run();
@@ -86,10 +95,13 @@ public class YupiikLoggers {
 
     public boolean addLogger(final Logger logger) {
         if (!YupiikLogger.class.isInstance(logger)) {
-            state.loggers.putIfAbsent(logger.getName(), createLogger(logger.getName(), logger.getResourceBundleName(), logger.getResourceBundle()));
+            if (getLoggerOrNull(logger.getName()) == null) { // strongly held, nothing references it until LogManager looks it up
+                createLogger(logger.getName(), logger.getResourceBundleName(), logger.getResourceBundle(), true);
+            }
             return false;
         }
-        return state.loggers.putIfAbsent(logger.getName(), YupiikLogger.class.cast(logger)) == null;
+        final var yupiikLogger = YupiikLogger.class.cast(logger);
+        return state.loggers.register(yupiikLogger, true) == yupiikLogger;
     }
 
     public Logger getLogger(final String name, final String bundle) {
@@ -97,12 +109,7 @@ public class YupiikLoggers {
         if (logger != null) {
             return logger;
         }
-        final var newInstance = createLogger(name, bundle, null);
-        final var existing = state.loggers.putIfAbsent(name, newInstance);
-        if (existing != null) {
-            return existing;
-        }
-        return newInstance;
+        return createLogger(name, bundle, null, false);
     }
 
     public YupiikLogger getLoggerOrNull(final String name) {
@@ -110,13 +117,20 @@ public class YupiikLoggers {
     }
 
     public String getProperty(final String name) {
-        return ofNullable(System.getProperty(name))
-                .or(() -> ofNullable(System.getenv(posix.matcher(name).replaceAll("_").toUpperCase(ROOT))))
-                .orElseGet(() -> state.configuration.get(name));
+        final var value = System.getProperty(name); // stays dynamic, it is a plain map lookup
+        return value != null ? value : state.snapshot.get(name);
     }
 
     public Enumeration<String> getLoggerNames() {
-        return enumeration(state.loggers.keySet());
+        return enumeration(state.loggers.names().collect(toList()));
+    }
+
+    /**
+     * @return counters about the logger population: {@code registered} (currently held), {@code weak} (weakly held ones),
+     * {@code created} and {@code collected} (weakly held loggers released by the application).
+     */
+    public Map<String, Long> getLoggerMetrics() {
+        return state.loggers.metrics();
     }
 
     // todo: should we just reset the handlers?
@@ -128,7 +142,7 @@ public class YupiikLoggers {
         if (!state.configurationRead.compareAndSet(false, true)) {
             return;
         }
-        final var hook = new Thread(() -> state.loggers.values().stream()
+        final var hook = new Thread(() -> state.loggers.loggers()
                 .flatMap(it -> Stream.of(it.getHandlers()))
                 .distinct()
                 .forEach(it -> {
@@ -176,6 +190,7 @@ public class YupiikLoggers {
         if (!newConfig.equals(state.configuration)) {
             state.configuration.clear();
             state.configuration.putAll(newConfig);
+            state.snapshot = new ConfigurationSnapshot(state.configuration, System.getenv());
         }
         invokeListeners();
     }
@@ -190,6 +205,7 @@ public class YupiikLoggers {
                 state.configuration.put(entry.getKey(), newValue);
             }
         }
+        state.snapshot = new ConfigurationSnapshot(state.configuration, System.getenv());
         invokeListeners();
     }
 
@@ -227,35 +243,42 @@ public class YupiikLoggers {
         state.listeners.remove(listener);
     }
 
-    private YupiikLogger createLogger(final String name, final String bundle, final ResourceBundle resourceBundle) {
-        try { // will test if already read so fine to call each time
-            readConfiguration();
-        } catch (final IOException e) {
-            throw new IllegalStateException(e);
+    private YupiikLogger createLogger(final String name, final String bundle, final ResourceBundle resourceBundle,
+                                      final boolean strong) {
+        if (!state.configurationLoaded) {
+            try { // will test if already read so fine to call concurrently
+                readConfiguration();
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            final var max = getProperty(YupiikLoggers.class.getName() + ".loggers.max");
+            state.loggers.configure(
+                    "weak".equalsIgnoreCase(getProperty(YupiikLoggers.class.getName() + ".loggers.retention")),
+                    max == null ? 0 : Integer.parseInt(max.trim()));
+            state.configurationLoaded = true;
         }
 
         final var logger = new YupiikLogger(name, bundle, resourceBundle);
-        configure(logger);
-
-        // now create parent tree
-        Logger current = logger;
-        while (current.getParent() == null) {
-            int dot = current.getName().lastIndexOf('.');
-            if (dot < 0) {
-                break;
-            }
-            final var parent = getLogger(current.getName().substring(0, dot), null);
-            logger.setParent(parent);
-            current = parent;
-        }
-        if (!name.isEmpty() && current.getParent() == null) {
-            logger.setParent(getLogger("", null));
+        final boolean configured = configure(logger) || strong;
+
+        // now link the parent, generally already there (same package) so it is a single lookup, else it is created
+        if (!name.isEmpty()) {
+            final int dot = name.lastIndexOf('.');
+            logger.setParent(getLogger(dot < 0 ? "" : name.substring(0, dot), null));
         }
-        return logger;
+        return state.loggers.register(logger, configured);
     }
 
-    private void configure(final YupiikLogger logger) {
-        final var level = getPropertyOrParentValue(logger.getName(), ".level");
+    private String getFromParents(final String name, final String suffix) {
+        return customProperties ?
+                ConfigurationSnapshot.getFromParents(name, suffix, this::getProperty) :
+                state.snapshot.getFromParents(name, suffix);
+    }
+
+    // returns true if the logger has its own configuration (not only inherited values)
+    private boolean configure(final YupiikLogger logger) {
+        final var ownLevel = getProperty(logger.getName() + ".level");
+        final var level = ownLevel != null ? ownLevel : getFromParents(logger.getName(), ".level");
         // JUL does not always do that but it is common to set the level for subloggers too at the same time
         logger.setLevel(level == null ? Level.INFO : Level.parse(level));
 
@@ -287,23 +310,7 @@ public class YupiikLoggers {
                     .map(this::createHandler)
                     .forEach(logger::addHandler);
         }
-    }
-
-    private String getPropertyOrParentValue(final String name, final String sub) {
-        String current = name;
-        do {
-            final var value = getProperty(current + sub);
-            if (value != null) {
-                return value;
-            }
-            final var sep = current.lastIndexOf('.');
-            if (sep > 0) {
-                current = current.substring(0, sep);
-            } else {
-                current = "";
-            }
-        } while (!current.isEmpty());
-        return getProperty(sub);
+        return ownLevel != null || useParents != null || filter != null || handlers != null;
     }
 
     @SuppressWarnings("unchecked")
@@ -340,6 +347,9 @@ public class YupiikLoggers {
                         final var jsonFormatter = new JsonFormatter();
                         jsonFormatter.setUseUUID(Boolean.parseBoolean(config.get("useUUID")));
                         jsonFormatter.setFormatMessage(Boolean.parseBoolean(config.get("formatMessage")));
+                        jsonFormatter.setFingerprint(Boolean.parseBoolean(config.get("fingerprint")));
+                        jsonFormatter.setIncludeSource(!"false".equals(config.get("includeSource")));
+                        ofNullable(config.get("idGenerator")).map(IdGenerators::of).ifPresent(jsonFormatter::setIdGenerator);
                         final var additionalFields = config.entrySet().stream()
                                 .filter(it -> it.getKey().startsWith("field."))
                                 .collect(toMap(it -> it.getKey().substring("field.".length()), Map.Entry::getValue));
@@ -359,6 +369,19 @@ public class YupiikLoggers {
                                 throw new IllegalArgumentException(e);
                             }
                         });
+                        ofNullable(config.get("structuredContext")).ifPresent(clazz -> {
+                            try {
+                                jsonFormatter.setStructuredContext(ofNullable(Thread.currentThread().getContextClassLoader())
+                                        .orElseGet(YupiikLoggers.class::getClassLoader)
+                                        .loadClass(clazz.trim())
+                                        .asSubclass(StructuredContext.class)
+                                        .getConstructor()
+                                        .newInstance());
+                            } catch (final InstantiationException | IllegalAccessException | InvocationTargetException |
+                                           NoSuchMethodException | ClassNotFoundException e) {
+                                throw new IllegalArgumentException(e);
+                            }
+                        });
                         handler.setFormatter(jsonFormatter);
                         break;
                     }
@@ -377,6 +400,38 @@ public class YupiikLoggers {
             handler.setFormatter(new InlineFormatter());
         }
 
+        final var stackMaxDepth = getProperty(handlerType + ".formatter.stackMaxDepth");
+        final var stackFoldedPackages = getProperty(handlerType + ".formatter.stackFoldedPackages");
+        final var stackSuppressionWindow = getProperty(handlerType + ".formatter.stackSuppressionWindow");
+        if (stackMaxDepth != null || stackFoldedPackages != null || stackSuppressionWindow != null) {
+            final var renderer = new ThrowableRenderer(
+                    stackMaxDepth == null ? -1 : Integer.parseInt(stackMaxDepth.trim()),
+                    stackFoldedPackages == null ? List.of() : Stream.of(stackFoldedPackages.split(","))
+                            .map(String::trim)
+                            .filter(it -> !it.isEmpty())
+                            .collect(toList()),
+                    stackSuppressionWindow == null ? -1 : Duration.parse(stackSuppressionWindow.trim()).toMillis());
+            final var handlerFormatter = handler.getFormatter();
+            if (handlerFormatter instanceof InlineFormatter) {
+                ((InlineFormatter) handlerFormatter).setThrowableRenderer(renderer);
+            } else if (handlerFormatter instanceof PatternFormatter) {
+                ((PatternFormatter) handlerFormatter).setThrowableRenderer(renderer);
+            } else if (handlerFormatter instanceof JsonFormatter) {
+                ((JsonFormatter) handlerFormatter).setThrowableRenderer(renderer);
+            }
+        }
+
+        final var idGenerator = getProperty(handlerType + ".formatter.idGenerator");
+        if (idGenerator != null) {
+            final var generator = IdGenerators.of(idGenerator);
+            final var handlerFormatter = handler.getFormatter();
+            if (handlerFormatter instanceof PatternFormatter) {
+                ((PatternFormatter) handlerFormatter).setIdGenerator(generator);
+            } else if (handlerFormatter instanceof JsonFormatter) {
+                ((JsonFormatter) handlerFormatter).setIdGenerator(generator);
+            }
+        }
+
         final var encoding = getProperty(handlerType + ".encoding");
         if (encoding != null) {
             try {
@@ -410,6 +465,14 @@ public class YupiikLoggers {
         }
     }
 
+    private static boolean overridesGetProperty(final Class<?> type) {
+        try {
+            return type.getMethod("getProperty", String.class).getDeclaringClass() != YupiikLoggers.class;
+        } catch (final NoSuchMethodException e) {
+            return true;
+        }
+    }
+
     private Handler newHandler(final String it) {
         switch (it) {
             case "async":
@@ -431,6 +494,14 @@ public class YupiikLoggers {
                         return ofNullable(YupiikLoggers.this.getProperty(name)).map(mapper).orElseGet(defaultValue);
                     }
                 };
+            case "routing":
+            case "io.yupiik.logging.jul.handler.RoutingFileHandler":
+                return new RoutingFileHandler() {
+                    @Override
+                    protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                        return ofNullable(YupiikLoggers.this.getProperty(name)).map(mapper).orElseGet(defaultValue);
+                    }
+                };
             default:
                 try {
                     return Thread.currentThread().getContextClassLoader()
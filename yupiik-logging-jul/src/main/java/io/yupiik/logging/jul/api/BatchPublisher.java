@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.api;
+
+import java.util.List;
+import java.util.logging.LogRecord;
+
+/**
+ * Enables a handler to receive several records at once and write them with a single I/O operation.
+ * <p>
+ * As of today it is used by {@link io.yupiik.logging.jul.handler.AsyncHandler} when it drains its queue
+ * and implemented by {@link io.yupiik.logging.jul.handler.LocalFileHandler}.
+ */
+public interface BatchPublisher {
+    /**
+     * Same as {@link java.util.logging.Handler#publish(LogRecord)} for a list of records, in order.
+     * If it throws, {@link io.yupiik.logging.jul.handler.AsyncHandler} publishes the records one by one
+     * so implementations should rather report per record failures themselves.
+     *
+     * @param records the records to publish, the list must not be kept by the implementation.
+     */
+    void publishAll(List<LogRecord> records);
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.api;
+
+import java.util.logging.LogRecord;
+
+/**
+ * Enables a {@link java.util.logging.Formatter} to write directly UTF-8 bytes, handlers writing UTF-8 use it
+ * instead of {@link java.util.logging.Formatter#format(LogRecord)} to avoid intermediate strings.
+ */
+public interface BytesFormatter {
+    /**
+     * Appends the formatted record, it must be the UTF-8 encoding of {@link java.util.logging.Formatter#format(LogRecord)}.
+     *
+     * @param record the record to format.
+     * @param buffer the output.
+     */
+    void formatTo(LogRecord record, Utf8Buffer buffer);
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.api;
+
+/**
+ * Generates the unique identifier of a record, used by {@link io.yupiik.logging.jul.formatter.JsonFormatter}
+ * ({@code uuid} field) and the {@code %uuid} token of {@link io.yupiik.logging.jul.formatter.PatternFormatter}.
+ * <p>
+ * Implementations are called concurrently for every record so they must be thread safe and avoid global locks.
+ * Built-in implementations are in {@link io.yupiik.logging.jul.formatter.IdGenerators}.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+    /**
+     * @return a new identifier.
+     */
+    String next();
+}
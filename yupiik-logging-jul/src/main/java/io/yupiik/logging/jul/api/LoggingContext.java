@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.logging.LogRecord;
+
+/**
+ * MDC like context bound to the current thread and rendered by the formatters
+ * ({@code %X{key}} for {@link io.yupiik.logging.jul.formatter.PatternFormatter}, {@code context} object
+ * for {@link io.yupiik.logging.jul.formatter.JsonFormatter}).
+ * <p>
+ * The context is an immutable {@link Snapshot} (a persistent map sharing its entries with the previous version)
+ * so capturing it - in {@link io.yupiik.logging.jul.handler.AsyncHandler} or to propagate it to another thread
+ * with {@link Snapshot#wrap(Runnable)} - is just a reference copy.
+ * <p>
+ * It is stored in a plain {@link ThreadLocal} so it works with virtual threads too, prefer scoped usages to avoid leaks:
+ * <pre>{@code
+ * try (final var scope = LoggingContext.with("user", user)) {
+ *     logger.info("...");
+ * }
+ * }</pre>
+ */
+public final class LoggingContext {
+    private static final ThreadLocal<Snapshot> CURRENT = new ThreadLocal<>();
+    private static final String FROZEN_NAME = LoggingContext.class.getName();
+
+    private LoggingContext() {
+        // no-op
+    }
+
+    /**
+     * @return the context of the current thread.
+     */
+    public static Snapshot current() {
+        final var snapshot = CURRENT.get();
+        return snapshot == null ? Snapshot.EMPTY : snapshot;
+    }
+
+    public static String get(final String key) {
+        return current().get(key);
+    }
+
+    public static void put(final String key, final String value) {
+        set(current().with(key, value));
+    }
+
+    public static void remove(final String key) {
+        set(current().without(key));
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Adds an entry to the context until the returned scope is closed.
+     *
+     * @param key   entry name.
+     * @param value entry value.
+     * @return the scope to close to restore the previous context.
+     */
+    public static Scope with(final String key, final String value) {
+        return attach(current().with(key, value));
+    }
+
+    /**
+     * Replaces the context of the current thread until the returned scope is closed.
+     *
+     * @param snapshot the context to use.
+     * @return the scope to close to restore the previous context.
+     */
+    public static Scope attach(final Snapshot snapshot) {
+        final var previous = CURRENT.get();
+        set(snapshot);
+        return () -> set(previous);
+    }
+
+    /**
+     * @param record the record being formatted.
+     * @return the context captured with the record in async mode or the current one.
+     */
+    public static Snapshot of(final LogRecord record) {
+        final var frozen = RecordFreezer.attachment(record, FROZEN_NAME, Snapshot.class);
+        return frozen != null ? frozen : current();
+    }
+
+    /**
+     * Captures the current context in the record, used before handing the record to another thread.
+     *
+     * @param record the record to capture the context for.
+     * @return the record to use.
+     */
+    public static LogRecord freeze(final LogRecord record) {
+        final var snapshot = CURRENT.get();
+        if (snapshot == null || snapshot.isEmpty()) {
+            return record;
+        }
+        return RecordFreezer.attach(record, FROZEN_NAME, snapshot);
+    }
+
+    private static void set(final Snapshot snapshot) {
+        if (snapshot == null || snapshot.isEmpty()) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(snapshot);
+        }
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Immutable context, each modification creates a node pointing to the previous snapshot.
+     */
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(null, null, null, 0, 0);
+
+        private static final int MAX_DEPTH = 64;
+
+        private final String key;
+        private final String value; // null for a removal
+        private final Snapshot parent;
+        private final int depth;
+        private final int size; // live entries, keeps isEmpty()/size() O(1) without flattening
+        private volatile String[] entries; // lazily flattened: key1, value1, key2, value2, ... in insertion order
+
+        private Snapshot(final String key, final String value, final Snapshot parent, final int depth, final int size) {
+            this.key = key;
+            this.value = value;
+            this.parent = parent;
+            this.depth = depth;
+            this.size = size;
+        }
+
+        public String get(final String key) {
+            for (var current = this; current != EMPTY; current = current.parent) {
+                if (current.key.equals(key)) {
+                    return current.value;
+                }
+            }
+            return null;
+        }
+
+        public Snapshot with(final String key, final String value) {
+            Objects.requireNonNull(key, "key can't be null");
+            if (value == null) {
+                return without(key);
+            }
+            final var previous = get(key);
+            if (value.equals(previous)) {
+                return this;
+            }
+            return compactIfNeeded(new Snapshot(key, value, this, depth + 1, previous == null ? size + 1 : size));
+        }
+
+        public Snapshot without(final String key) {
+            if (get(key) == null) {
+                return this;
+            }
+            return compactIfNeeded(new Snapshot(key, null, this, depth + 1, size - 1));
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param consumer callback called for each entry, in insertion order.
+         */
+        public void forEach(final BiConsumer<String, String> consumer) {
+            final var flat = entries();
+            for (int i = 0; i < flat.length; i += 2) {
+                consumer.accept(flat[i], flat[i + 1]);
+            }
+        }
+
+        public Map<String, String> toMap() {
+            final var map = new LinkedHashMap<String, String>();
+            forEach(map::put);
+            return map;
+        }
+
+        /**
+         * @param task the task to run with this context.
+         * @return a task running the original one with this context, used to propagate it to another thread.
+         */
+        public Runnable wrap(final Runnable task) {
+            return () -> {
+                try (final var scope = attach(this)) {
+                    task.run();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return toMap().toString();
+        }
+
+        private String[] entries() {
+            var flat = entries;
+            if (flat == null) {
+                flat = flatten();
+                entries = flat;
+            }
+            return flat;
+        }
+
+        // newest entries shadow the older ones, removals are null values
+        private String[] flatten() {
+            final var nodes = new Snapshot[depth];
+            int count = 0;
+            for (var current = this; current != EMPTY; current = current.parent) {
+                if (!isShadowed(nodes, count, current.key)) {
+                    nodes[count++] = current;
+                }
+            }
+            int live = 0;
+            for (int i = 0; i < count; i++) {
+                if (nodes[i].value != null) {
+                    live++;
+                }
+            }
+            final var flat = new String[live * 2];
+            int index = 0;
+            for (int i = count - 1; i >= 0; i--) {
+                if (nodes[i].value != null) {
+                    flat[index++] = nodes[i].key;
+                    flat[index++] = nodes[i].value;
+                }
+            }
+            return flat;
+        }
+
+        private static boolean isShadowed(final Snapshot[] nodes, final int count, final String key) {
+            for (int i = 0; i < count; i++) {
+                if (nodes[i].key.equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // avoid an unbounded chain when a thread keeps updating the same keys,
+        // the chain can be twice the live entries so a big context is not compacted on each update
+        private static Snapshot compactIfNeeded(final Snapshot snapshot) {
+            if (snapshot.depth <= MAX_DEPTH || snapshot.depth <= 2 * snapshot.size) {
+                return snapshot;
+            }
+            final var flat = snapshot.entries();
+            var compacted = EMPTY;
+            for (int i = 0; i < flat.length; i += 2) {
+                compacted = new Snapshot(flat[i], flat[i + 1], compacted, compacted.depth + 1, compacted.size + 1);
+            }
+            return compacted;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package io.yupiik.logging.jul.api;
 
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.ResourceBundle;
 import java.util.function.Function;
 import java.util.logging.Level;
@@ -27,15 +28,61 @@ import java.util.logging.LogRecord;
  * As of today it is only used in {@link io.yupiik.logging.jul.handler.AsyncHandler} and integrated with {@link io.yupiik.logging.jul.formatter.JsonFormatter}.
  */
 public interface RecordFreezer extends Function<LogRecord, LogRecord> {
+    /**
+     * Attaches some data to a record. A {@link #carrier(LogRecord) carrier} not yet shared is enriched in place,
+     * an already frozen (shared) record gets its attachments copied in a new frozen record wrapping the same original record
+     * since it can be seen by other handlers.
+     *
+     * @param record  the record to enrich.
+     * @param creator the key of the attachment, generally the class name of the caller.
+     * @param data    the data to attach.
+     * @return the frozen record to use.
+     */
+    static LogRecord attach(final LogRecord record, final String creator, final Object data) {
+        if (record instanceof FrozenLogRecord<?>) {
+            return ((FrozenLogRecord<?>) record).attach(creator, data);
+        }
+        return new FrozenLogRecord<>(record, data, creator);
+    }
+
+    /**
+     * Creates a frozen record without attachment owned by the caller: {@link #attach(LogRecord, String, Object)} enriches it
+     * in place until {@link FrozenLogRecord#share()} is called so stacked freezers (context, handler, formatter) only pay once
+     * the {@link LogRecord} constructor.
+     *
+     * @param record the record to freeze.
+     * @return the carrier, it must be shared before being handed to another thread or handler.
+     */
+    static FrozenLogRecord<Object> carrier(final LogRecord record) {
+        return new FrozenLogRecord<>(record, new Object[0], true);
+    }
+
+    /**
+     * @param record  the record to look the attachment up from.
+     * @param creator the key used when attaching the data.
+     * @param type    the expected type of the attachment.
+     * @param <A>     the type of the attachment.
+     * @return the attachment or {@code null} if there is none or it does not match the type.
+     */
+    static <A> A attachment(final LogRecord record, final String creator, final Class<A> type) {
+        if (!(record instanceof FrozenLogRecord<?>)) {
+            return null;
+        }
+        final var data = ((FrozenLogRecord<?>) record).getAttachment(creator);
+        return type.isInstance(data) ? type.cast(data) : null;
+    }
+
     // class to enable to enrich the log record with a context easily
     //
     // it has some impacts - generally ok - see https://bugs.openjdk.org/browse/JDK-6569068
     // note that for 100% JVM case using unsafe to bypass the constructor can be more efficient - but we target graal and future jvm
-    // so need to stay away from it for now
+    // so need to stay away from it for now, instead a single carrier record gets all the attachments (see carrier())
     class FrozenLogRecord<T> extends LogRecord {
         private final LogRecord delegate;
-        private final T data;
-        private final String creator;
+
+        // creator/data pairs, only modified while the record is owned (not yet shared) by its creator
+        private Object[] attachments;
+        private boolean owned; // no need of volatile, the record is published to other threads once shared
 
         /**
          * @param delegate the original record.
@@ -44,18 +91,80 @@ public interface RecordFreezer extends Function<LogRecord, LogRecord> {
          */
         public FrozenLogRecord(final LogRecord delegate,
                                final T data, final String creator) {
+            this(delegate, new Object[]{creator, data}, false);
+        }
+
+        private FrozenLogRecord(final LogRecord delegate, final Object[] attachments, final boolean owned) {
             super(delegate.getLevel(), delegate.getLoggerName());
             this.delegate = delegate;
-            this.data = data;
-            this.creator = creator;
+            this.attachments = attachments;
+            this.owned = owned;
+        }
+
+        /**
+         * Adds or replaces an attachment, a shared record is not modified.
+         *
+         * @param creator the key of the attachment.
+         * @param data    the attachment.
+         * @return this record if it is not shared yet else a new record with the same delegate and attachments plus the new one.
+         */
+        public FrozenLogRecord<T> attach(final String creator, final Object data) {
+            Object[] copy = null;
+            for (int i = 0; i < attachments.length; i += 2) {
+                if (creator.equals(attachments[i])) {
+                    copy = attachments.clone();
+                    copy[i + 1] = data;
+                    break;
+                }
+            }
+            if (copy == null) {
+                copy = Arrays.copyOf(attachments, attachments.length + 2);
+                copy[attachments.length] = creator;
+                copy[attachments.length + 1] = data;
+            }
+            if (owned) {
+                attachments = copy;
+                return this;
+            }
+            return new FrozenLogRecord<>(delegate, copy, false);
         }
 
+        /**
+         * Marks the record as shared, next attachments will not modify it anymore.
+         *
+         * @return this record.
+         */
+        public FrozenLogRecord<T> share() {
+            owned = false;
+            return this;
+        }
+
+        /**
+         * @param creator the key of the attachment.
+         * @return the attachment or {@code null}, it also looks up wrapped frozen records.
+         */
+        public Object getAttachment(final String creator) {
+            for (int i = 0; i < attachments.length; i += 2) {
+                if (creator.equals(attachments[i])) {
+                    return attachments[i + 1];
+                }
+            }
+            return delegate instanceof FrozenLogRecord<?> ? ((FrozenLogRecord<?>) delegate).getAttachment(creator) : null;
+        }
+
+        /**
+         * @return the creator of the first attachment or {@code null} for an empty carrier.
+         */
         public String getCreator() {
-            return creator;
+            return attachments.length == 0 ? null : (String) attachments[0];
         }
 
+        /**
+         * @return the first attachment or {@code null} for an empty carrier.
+         */
+        @SuppressWarnings("unchecked")
         public T getData() {
-            return this.data;
+            return attachments.length == 0 ? null : (T) attachments[1];
         }
 
         public LogRecord getDelegate() {
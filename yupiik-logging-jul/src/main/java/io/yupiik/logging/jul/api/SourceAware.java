@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.api;
+
+/**
+ * Enables a {@link java.util.logging.Formatter} to tell if it reads the source class and method of the records.
+ * When it does not, {@link io.yupiik.logging.jul.handler.AsyncHandler} skips the (slow) caller inference.
+ * Formatters not implementing this interface are assumed to need it.
+ */
+public interface SourceAware {
+    /**
+     * @return {@code true} if {@link java.util.logging.LogRecord#getSourceClassName()} or
+     * {@link java.util.logging.LogRecord#getSourceMethodName()} are used to format the records.
+     */
+    boolean needsSource();
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.api;
+
+import java.util.logging.LogRecord;
+
+/**
+ * Typed alternative to the {@code customEntriesMapper} of {@link io.yupiik.logging.jul.formatter.JsonFormatter}:
+ * instead of creating a {@code Map<String, String>} per record the context writes its entries in an {@link Emitter}
+ * which encodes them directly in the JSON output (escaping included).
+ * <p>
+ * In async mode, the formatter captures the emitted entries in the caller thread and replays them when formatting.
+ */
+@FunctionalInterface
+public interface StructuredContext {
+    /**
+     * @param record  the record being formatted.
+     * @param emitter where to write the entries of the context for this record.
+     */
+    void emit(LogRecord record, Emitter emitter);
+
+    interface Emitter {
+        /**
+         * @param key   entry name.
+         * @param value entry value, {@code null} is written as JSON {@code null}.
+         * @return this emitter.
+         */
+        Emitter add(String key, String value);
+
+        Emitter add(String key, long value);
+
+        /**
+         * @param key   entry name.
+         * @param value entry value, not finite values are written as strings since JSON does not support them.
+         * @return this emitter.
+         */
+        Emitter add(String key, double value);
+
+        Emitter add(String key, boolean value);
+
+        /**
+         * Starts a nested object, next entries are added to this object until {@link #endObject()} is called.
+         *
+         * @param key the object name.
+         * @return this emitter.
+         */
+        Emitter startObject(String key);
+
+        /**
+         * Ends the current nested object, objects left open are closed after the context and extra calls are ignored.
+         *
+         * @return this emitter.
+         */
+        Emitter endObject();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Growable byte buffer appending UTF-8 encoded text, it is intended to be reused (per thread or per handler)
+ * to format records without intermediate {@link String}.
+ */
+public final class Utf8Buffer {
+    private static final byte[] DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+    private byte[] bytes;
+    private int size;
+
+    public Utf8Buffer() {
+        this(512, 64 * 1024);
+    }
+
+    /**
+     * @param initialCapacity     initial size of the buffer.
+     * @param maxRetainedCapacity if the buffer grew over this size, {@link #reset()} releases it.
+     */
+    public Utf8Buffer(final int initialCapacity, final int maxRetainedCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.maxRetainedCapacity = maxRetainedCapacity;
+        this.bytes = new byte[initialCapacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the underlying array, only the {@link #size()} first bytes are meaningful.
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    public void reset() {
+        size = 0;
+        if (bytes.length > maxRetainedCapacity) { // don't keep a huge stack trace buffer forever
+            bytes = new byte[initialCapacity];
+        }
+    }
+
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    public Utf8Buffer append(final byte value) {
+        ensureCapacity(1);
+        bytes[size++] = value;
+        return this;
+    }
+
+    /**
+     * @param value already encoded bytes.
+     * @return this buffer.
+     */
+    public Utf8Buffer append(final byte[] value) {
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, bytes, size, value.length);
+        size += value.length;
+        return this;
+    }
+
+    /**
+     * @param value a value only containing ASCII characters (no encoding is done).
+     * @return this buffer.
+     */
+    public Utf8Buffer appendAscii(final String value) {
+        final int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            bytes[size++] = (byte) value.charAt(i);
+        }
+        return this;
+    }
+
+    public Utf8Buffer append(final long value) {
+        if (value == Long.MIN_VALUE) {
+            return appendAscii("-9223372036854775808");
+        }
+        long remaining = value;
+        if (remaining < 0) {
+            append((byte) '-');
+            remaining = -remaining;
+        }
+        int digits = 1;
+        for (long limit = 10; digits < 19 && remaining >= limit; limit *= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = DIGITS[(int) (remaining % 10)];
+            remaining /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    /**
+     * Appends a number left padded with zeros.
+     *
+     * @param value  the positive value to append.
+     * @param digits the number of digits to write.
+     * @return this buffer.
+     */
+    public Utf8Buffer appendPadded(final int value, final int digits) {
+        ensureCapacity(digits);
+        int remaining = value;
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = DIGITS[remaining % 10];
+            remaining /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    public Utf8Buffer append(final CharSequence value) {
+        return append(value, 0, value.length());
+    }
+
+    public Utf8Buffer append(final CharSequence value, final int start, final int end) {
+        ensureCapacity(end - start);
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                if (size == bytes.length) {
+                    ensureCapacity(end - i);
+                }
+                bytes[size++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+            } else {
+                appendCodePoint(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param codePoint a unicode code point, lone surrogates are replaced by {@code ?} as {@link String#getBytes(java.nio.charset.Charset)} does.
+     * @return this buffer.
+     */
+    public Utf8Buffer appendCodePoint(final int codePoint) {
+        ensureCapacity(4);
+        if (codePoint < 0x80) {
+            bytes[size++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            bytes[size++] = (byte) (0xC0 | (codePoint >> 6));
+            bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate((char) codePoint) && codePoint <= 0xFFFF) {
+            bytes[size++] = '?';
+        } else if (codePoint < 0x10000) {
+            bytes[size++] = (byte) (0xE0 | (codePoint >> 12));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return this;
+    }
+
+    public void ensureCapacity(final int additional) {
+        final int required = size + additional;
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, size, UTF_8);
+    }
+}
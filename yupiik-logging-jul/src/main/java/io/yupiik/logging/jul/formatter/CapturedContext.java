@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import io.yupiik.logging.jul.api.StructuredContext;
+
+import java.util.Arrays;
+
+// records the entries emitted by a StructuredContext in the caller thread (async mode) to replay them later
+final class CapturedContext implements StructuredContext.Emitter {
+    private static final byte STRING = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte START = 4;
+    private static final byte END = 5;
+
+    private byte[] types = new byte[8];
+    private String[] keys = new String[8];
+    private Object[] objects = new Object[8];
+    private long[] numbers = new long[8];
+    private int size;
+
+    @Override
+    public StructuredContext.Emitter add(final String key, final String value) {
+        return push(STRING, key, value, 0);
+    }
+
+    @Override
+    public StructuredContext.Emitter add(final String key, final long value) {
+        return push(LONG, key, null, value);
+    }
+
+    @Override
+    public StructuredContext.Emitter add(final String key, final double value) {
+        return push(DOUBLE, key, null, Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public StructuredContext.Emitter add(final String key, final boolean value) {
+        return push(BOOLEAN, key, null, value ? 1 : 0);
+    }
+
+    @Override
+    public StructuredContext.Emitter startObject(final String key) {
+        return push(START, key, null, 0);
+    }
+
+    @Override
+    public StructuredContext.Emitter endObject() {
+        return push(END, null, null, 0);
+    }
+
+    void replay(final StructuredContext.Emitter emitter) {
+        for (int i = 0; i < size; i++) {
+            switch (types[i]) {
+                case STRING:
+                    emitter.add(keys[i], (String) objects[i]);
+                    break;
+                case LONG:
+                    emitter.add(keys[i], numbers[i]);
+                    break;
+                case DOUBLE:
+                    emitter.add(keys[i], Double.longBitsToDouble(numbers[i]));
+                    break;
+                case BOOLEAN:
+                    emitter.add(keys[i], numbers[i] == 1);
+                    break;
+                case START:
+                    emitter.startObject(keys[i]);
+                    break;
+                default:
+                    emitter.endObject();
+            }
+        }
+    }
+
+    private StructuredContext.Emitter push(final byte type, final String key, final Object object, final long number) {
+        if (size == types.length) {
+            final int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+        }
+        types[size] = type;
+        keys[size] = key;
+        objects[size] = object;
+        numbers[size] = number;
+        size++;
+        return this;
+    }
+}
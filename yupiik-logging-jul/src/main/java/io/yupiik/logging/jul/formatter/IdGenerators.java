@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import io.yupiik.logging.jul.api.IdGenerator;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Locale.ROOT;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Built-in {@link IdGenerator}:
+ * <ul>
+ *     <li>{@code random}: {@link UUID#randomUUID()} (default), it relies on a shared {@link java.security.SecureRandom},</li>
+ *     <li>{@code uuid7}: time ordered UUID (version 7) using {@link ThreadLocalRandom} for the random bits,</li>
+ *     <li>{@code counter}: {@code <node>-<thread slot>-<counter>} hexadecimal values, the node is random per JVM,
+ *     each thread gets a slot the first time it generates an identifier and increments its own counter.</li>
+ * </ul>
+ */
+public final class IdGenerators {
+    public static final IdGenerator RANDOM = () -> UUID.randomUUID().toString();
+    public static final IdGenerator UUID_V7 = IdGenerators::uuid7;
+    public static final IdGenerator COUNTER = new Counter();
+
+    private IdGenerators() {
+        // no-op
+    }
+
+    /**
+     * @param name {@code random}, {@code uuid7}, {@code counter} or the fully qualified name of an {@link IdGenerator}.
+     * @return the matching generator.
+     */
+    public static IdGenerator of(final String name) {
+        switch (name.trim().toLowerCase(ROOT)) {
+            case "random":
+            case "uuid":
+                return RANDOM;
+            case "uuid7":
+            case "uuidv7":
+                return UUID_V7;
+            case "counter":
+                return COUNTER;
+            default:
+                try {
+                    return ofNullable(Thread.currentThread().getContextClassLoader())
+                            .orElseGet(IdGenerators.class::getClassLoader)
+                            .loadClass(name.trim())
+                            .asSubclass(IdGenerator.class)
+                            .getConstructor()
+                            .newInstance();
+                } catch (final InstantiationException | IllegalAccessException | InvocationTargetException |
+                               NoSuchMethodException | ClassNotFoundException e) {
+                    throw new IllegalArgumentException(e);
+                }
+        }
+    }
+
+    // RFC 9562: 48 bits of unix epoch millis, version, 12 random bits, variant and 62 random bits
+    static UUID newUuid7(final long epochMillis) {
+        final var random = ThreadLocalRandom.current();
+        final long msb = (epochMillis << 16) | 0x7000L | (random.nextInt() & 0xFFFL);
+        final long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    private static String uuid7() {
+        return newUuid7(System.currentTimeMillis()).toString();
+    }
+
+    private static class Counter implements IdGenerator {
+        private final String node = Long.toHexString(ThreadLocalRandom.current().nextLong() & 0xFFFFFFFFFFFFL) + '-';
+        private final AtomicLong slots = new AtomicLong();
+        private final ThreadLocal<ThreadCounter> counters = ThreadLocal.withInitial(() ->
+                new ThreadCounter(node + Long.toHexString(slots.incrementAndGet()) + '-'));
+
+        @Override
+        public String next() {
+            final var counter = counters.get();
+            return counter.prefix + Long.toHexString(++counter.value);
+        }
+    }
+
+    private static class ThreadCounter {
+        private final String prefix;
+        private long value;
+
+        private ThreadCounter(final String prefix) {
+            this.prefix = prefix;
+        }
+    }
+}
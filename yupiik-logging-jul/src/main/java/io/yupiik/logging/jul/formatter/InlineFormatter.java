@@ -15,8 +15,8 @@
  */
 package io.yupiik.logging.jul.formatter;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import io.yupiik.logging.jul.api.SourceAware;
+
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
@@ -28,7 +28,7 @@ import static java.time.temporal.ChronoField.MINUTE_OF_HOUR;
 import static java.time.temporal.ChronoField.NANO_OF_SECOND;
 import static java.time.temporal.ChronoField.SECOND_OF_MINUTE;
 
-public class InlineFormatter extends Formatter {
+public class InlineFormatter extends Formatter implements SourceAware {
     private interface Format { // for graalvm
         // ensure it uses a constant width pattern
         DateTimeFormatter DATE_TIME_FORMATTER = new DateTimeFormatterBuilder()
@@ -49,21 +49,35 @@ public class InlineFormatter extends Formatter {
                 .toFormatter();
     }
 
+    private ThrowableRenderer throwableRenderer = ThrowableRenderer.DEFAULT;
+
+    private final TimestampCache timestamps = new TimestampCache(instant -> instant.atOffset(ZoneOffset.UTC).format(Format.DATE_TIME_FORMATTER));
+
+    public void setThrowableRenderer(final ThrowableRenderer throwableRenderer) {
+        this.throwableRenderer = throwableRenderer == null ? ThrowableRenderer.DEFAULT : throwableRenderer;
+    }
+
+    @Override
+    public boolean needsSource() {
+        return getClass() != InlineFormatter.class; // subclasses can print it
+    }
+
     @Override
     public String format(final LogRecord record) {
-        return record.getInstant().atOffset(ZoneOffset.UTC).format(Format.DATE_TIME_FORMATTER) +
+        return timestamps.format(record.getInstant()) +
                 " [" + record.getLevel().getName() + "][" + record.getLoggerName() + "] " +
-                formatMessage(record) + toString(record.getThrown()) + '\n';
+                formatMessage(record) + toString(record.getThrown(), record.getMillis()) + '\n';
+    }
+
+    @Override
+    public String formatMessage(final LogRecord record) {
+        return MessageTemplates.format(record);
     }
 
-    private String toString(final Throwable thrown) {
+    private String toString(final Throwable thrown, final long timestamp) {
         if (thrown == null) {
             return "";
         }
-        final StringWriter writer = new StringWriter();
-        try (final PrintWriter printWriter = new PrintWriter(writer)) {
-            thrown.printStackTrace(printWriter);
-        }
-        return '\n' + writer.toString().trim();
+        return '\n' + throwableRenderer.render(thrown, timestamp).trim();
     }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import io.yupiik.logging.jul.api.StructuredContext;
+import io.yupiik.logging.jul.api.Utf8Buffer;
+
+// writes the context entries in the JSON record being built, each top level entry is prefixed by a comma
+final class JsonContextEmitter implements StructuredContext.Emitter {
+    private final StringBuilder builder;
+    private final Utf8Buffer buffer;
+    private int depth;
+    private boolean first;
+
+    JsonContextEmitter(final StringBuilder builder) {
+        this.builder = builder;
+        this.buffer = null;
+    }
+
+    JsonContextEmitter(final Utf8Buffer buffer) {
+        this.builder = null;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public StructuredContext.Emitter add(final String key, final String value) {
+        key(key);
+        if (value == null) {
+            ascii("null");
+        } else if (builder != null) {
+            JsonStrings.escape(value, builder);
+        } else {
+            JsonStrings.escape(value, buffer);
+        }
+        return this;
+    }
+
+    @Override
+    public StructuredContext.Emitter add(final String key, final long value) {
+        key(key);
+        if (builder != null) {
+            builder.append(value);
+        } else {
+            buffer.append(value);
+        }
+        return this;
+    }
+
+    @Override
+    public StructuredContext.Emitter add(final String key, final double value) {
+        if (!Double.isFinite(value)) {
+            return add(key, Double.toString(value));
+        }
+        key(key);
+        ascii(Double.toString(value));
+        return this;
+    }
+
+    @Override
+    public StructuredContext.Emitter add(final String key, final boolean value) {
+        key(key);
+        ascii(value ? "true" : "false");
+        return this;
+    }
+
+    @Override
+    public StructuredContext.Emitter startObject(final String key) {
+        key(key);
+        ascii("{");
+        depth++;
+        first = true;
+        return this;
+    }
+
+    @Override
+    public StructuredContext.Emitter endObject() {
+        if (depth == 0) { // unbalanced call, ignored to keep the JSON valid instead of losing the record
+            return this;
+        }
+        ascii("}");
+        depth--;
+        first = false;
+        return this;
+    }
+
+    // ensures the JSON stays valid if the context forgot to close its objects
+    void close() {
+        while (depth > 0) {
+            endObject();
+        }
+    }
+
+    private void key(final String key) {
+        if (depth == 0 || !first) {
+            ascii(",");
+        }
+        first = false;
+        if (builder != null) {
+            JsonStrings.escape(key, builder);
+            builder.append(':');
+        } else {
+            JsonStrings.escape(key, buffer);
+            buffer.append((byte) ':');
+        }
+    }
+
+    private void ascii(final String value) {
+        if (builder != null) {
+            builder.append(value);
+        } else {
+            buffer.appendAscii(value);
+        }
+    }
+}
@@ -15,109 +15,329 @@
  */
 package io.yupiik.logging.jul.formatter;
 
+import io.yupiik.logging.jul.api.BytesFormatter;
+import io.yupiik.logging.jul.api.IdGenerator;
+import io.yupiik.logging.jul.api.LoggingContext;
 import io.yupiik.logging.jul.api.RecordFreezer;
+import io.yupiik.logging.jul.api.SourceAware;
+import io.yupiik.logging.jul.api.StructuredContext;
+import io.yupiik.logging.jul.api.Utf8Buffer;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
 
-public class JsonFormatter extends Formatter implements RecordFreezer {
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class JsonFormatter extends Formatter implements RecordFreezer, BytesFormatter, SourceAware {
     private static final ZoneId UTC = ZoneId.of("UTC");
     private static final String NAME = JsonFormatter.class.getName();
+    private static final String STRUCTURED_NAME = NAME + ".structured";
+    private static final int MAX_FRAGMENTS = 4096;
+
+    // subclasses can customize format() or escaping so only use the direct encoders when they opt in
+    private final boolean defaultEncoding = useDefaultEncoding();
+
+    // subclasses can customize the exception rendering (toString(Throwable)), then the suppression window of the renderer is ignored
+    private final boolean customThrowableRendering = !defaultEncoding;
 
+    private final TimestampCache timestamps = new TimestampCache(instant -> OffsetDateTime.ofInstant(instant, UTC).toString());
+
+    private ThrowableRenderer throwableRenderer = ThrowableRenderer.DEFAULT;
     private boolean useUUID;
+    private IdGenerator idGenerator = IdGenerators.RANDOM;
+    private boolean fingerprint;
+    private boolean includeSource = true;
     private boolean formatMessage = true;
     private Function<LogRecord, Map<String, String>> customEntriesMapper = null;
+    private StructuredContext structuredContext = null;
     private Map<String, String> additionalFields = Map.of();
+    private Fragment additionalFieldsFragment = new Fragment("");
+
+    // encoded ',"<name>":"<escaped value>"' parts, these values are shared by a lot of records (loggers, classes, ...)
+    private final ConcurrentMap<String, Fragment> levels = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Fragment> loggers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Fragment> methods = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Fragment> classes = new ConcurrentHashMap<>();
 
     public void setCustomEntriesMapper(final Function<LogRecord, Map<String, String>> customEntriesMapper) {
         this.customEntriesMapper = customEntriesMapper;
     }
 
+    public void setStructuredContext(final StructuredContext structuredContext) {
+        this.structuredContext = structuredContext;
+    }
+
+    public void setThrowableRenderer(final ThrowableRenderer throwableRenderer) {
+        this.throwableRenderer = throwableRenderer == null ? ThrowableRenderer.DEFAULT : throwableRenderer;
+    }
+
     public void setFormatMessage(final boolean formatMessage) {
         this.formatMessage = formatMessage;
     }
 
+    public void setFingerprint(final boolean fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public void setIncludeSource(final boolean includeSource) {
+        this.includeSource = includeSource;
+    }
+
+    public void setIdGenerator(final IdGenerator idGenerator) {
+        this.idGenerator = idGenerator == null ? IdGenerators.RANDOM : idGenerator;
+    }
+
     public void setUseUUID(final boolean useUUID) {
         this.useUUID = useUUID;
     }
 
     public void setAdditionalFields(final Map<String, String> additionalFields) {
         this.additionalFields = additionalFields == null ? Map.of() : additionalFields;
+
+        // values are constant so encode them once
+        final var json = new StringBuilder();
+        for (final var entry : this.additionalFields.entrySet()) {
+            json.append(",\"").append(entry.getKey()).append("\":");
+            JsonStrings.escape(entry.getValue(), json);
+        }
+        this.additionalFieldsFragment = new Fragment(json.toString());
+    }
+
+    @Override
+    public boolean needsSource() {
+        return includeSource || !defaultEncoding;
+    }
+
+    @Override
+    public String formatMessage(final LogRecord record) {
+        return MessageTemplates.format(record);
     }
 
     @Override
     public LogRecord apply(final LogRecord logRecord) {
+        var record = logRecord;
         final var mapper = customEntriesMapper;
-        if (mapper == null) {
-            return logRecord;
+        if (mapper != null) {
+            final var data = mapper.apply(logRecord);
+            record = RecordFreezer.attach(record, NAME, data == null ? Map.of() : data);
         }
-        return new FrozenLogRecord<>(logRecord, customEntriesMapper.apply(logRecord), NAME);
+        final var context = structuredContext;
+        if (context != null) { // the context is generally thread bound so capture it in the caller thread
+            final var captured = new CapturedContext();
+            context.emit(logRecord, captured);
+            record = RecordFreezer.attach(record, STRUCTURED_NAME, captured);
+        }
+        return record;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public String format(final LogRecord record) {
         final var json = new StringBuilder("{");
         if (useUUID) {
-            json.append("\"uuid\":\"").append(UUID.randomUUID()).append("\",");
+            json.append("\"uuid\":");
+            appendEscaped(json, idGenerator.next());
+            json.append(',');
         }
-        json.append("\"timestamp\":").append(simpleEscape(OffsetDateTime.ofInstant(Instant.ofEpochMilli(record.getMillis()), UTC).toString()));
+        json.append("\"timestamp\":");
+        appendEscaped(json, timestamps.format(record.getMillis()));
         if (record.getLevel() != null) {
-            json.append(",\"level\":\"").append(record.getLevel().getName()).append("\"");
+            json.append(fragment(levels, "level", record.getLevel().getName()).text);
         }
         if (record.getLoggerName() != null) {
-            json.append(",\"logger\":\"").append(record.getLoggerName()).append("\"");
+            json.append(fragment(loggers, "logger", record.getLoggerName()).text);
         }
-        if (record.getSourceMethodName() != null) {
-            json.append(",\"method\":\"").append(record.getSourceMethodName()).append("\"");
+        if (includeSource && record.getSourceMethodName() != null) {
+            json.append(fragment(methods, "method", record.getSourceMethodName()).text);
         }
         final var message = formatMessage ? formatMessage(record) : record.getMessage();
         if (message != null) {
-            json.append(",\"message\":").append(simpleEscape(message));
+            json.append(",\"message\":");
+            appendEscaped(json, message);
         }
         if (record.getThrown() != null) {
-            json.append(",\"exception\":").append(simpleEscape(toString(record.getThrown())));
-        }
-        if (record.getSourceClassName() != null) {
-            json.append(",\"class\":\"").append(record.getSourceClassName()).append("\"");
-        }
-        if (record instanceof FrozenLogRecord<?>) {
-            var flr = (FrozenLogRecord<?>) record;
-            while (!NAME.equals(flr.getCreator())) {
-                if (flr.getDelegate() instanceof FrozenLogRecord<?>) {
-                    flr = (FrozenLogRecord<?>) flr.getDelegate();
-                } else {
-                    flr = null;
-                    break;
-                }
+            json.append(",\"exception\":");
+            appendEscaped(json, exception(record));
+            if (fingerprint) {
+                json.append(",\"fingerprint\":\"").append(ThrowableRenderer.fingerprint(record.getThrown())).append("\"");
             }
-            if (flr == null) {
-                appendMapperEnrichment(record, json);
-            } else if (flr.getData() instanceof Map<?, ?>){
-                appendCustomData(json, (Map<String, String>) flr.getData());
+        }
+        if (includeSource && record.getSourceClassName() != null) {
+            json.append(fragment(classes, "class", record.getSourceClassName()).text);
+        }
+        appendCustomData(json, findCustomData(record));
+        final var context = LoggingContext.of(record);
+        if (!context.isEmpty() || structuredContext != null || record instanceof FrozenLogRecord<?>) {
+            final var emitter = new JsonContextEmitter(json);
+            if (!context.isEmpty()) {
+                emitter.startObject("context");
+                context.forEach(emitter::add);
+                emitter.endObject();
             }
-        } else {
-            appendMapperEnrichment(record, json);
+            emitStructuredContext(record, emitter);
         }
         appendAdditionalFields(json);
-        return json.append('}').toString() + '\n';
+        return json.append('}').append('\n').toString();
+    }
+
+    @Override
+    public void formatTo(final LogRecord record, final Utf8Buffer json) {
+        if (!defaultEncoding) {
+            json.append(format(record));
+            return;
+        }
+
+        json.append((byte) '{');
+        if (useUUID) {
+            json.appendAscii("\"uuid\":");
+            JsonStrings.escape(idGenerator.next(), json);
+            json.append((byte) ',');
+        }
+        json.appendAscii("\"timestamp\":\"");
+        appendTimestamp(json, record.getMillis());
+        json.append((byte) '"');
+        if (record.getLevel() != null) {
+            json.append(fragment(levels, "level", record.getLevel().getName()).bytes);
+        }
+        if (record.getLoggerName() != null) {
+            json.append(fragment(loggers, "logger", record.getLoggerName()).bytes);
+        }
+        if (includeSource && record.getSourceMethodName() != null) {
+            json.append(fragment(methods, "method", record.getSourceMethodName()).bytes);
+        }
+        final var message = formatMessage ? formatMessage(record) : record.getMessage();
+        if (message != null) {
+            json.appendAscii(",\"message\":");
+            JsonStrings.escape(message, json);
+        }
+        if (record.getThrown() != null) {
+            json.appendAscii(",\"exception\":");
+            JsonStrings.escape(exception(record), json);
+            if (fingerprint) {
+                json.appendAscii(",\"fingerprint\":\"").appendAscii(ThrowableRenderer.fingerprint(record.getThrown())).append((byte) '"');
+            }
+        }
+        if (includeSource && record.getSourceClassName() != null) {
+            json.append(fragment(classes, "class", record.getSourceClassName()).bytes);
+        }
+        final var custom = findCustomData(record);
+        if (custom != null) {
+            for (final var entry : custom.entrySet()) {
+                json.appendAscii(",\"").append(entry.getKey()).appendAscii("\":").append(entry.getValue());
+            }
+        }
+        final var context = LoggingContext.of(record);
+        if (!context.isEmpty() || structuredContext != null || record instanceof FrozenLogRecord<?>) {
+            final var emitter = new JsonContextEmitter(json);
+            if (!context.isEmpty()) {
+                emitter.startObject("context");
+                context.forEach(emitter::add);
+                emitter.endObject();
+            }
+            emitStructuredContext(record, emitter);
+        }
+        json.append(additionalFieldsFragment.bytes);
+        json.appendAscii("}\n");
+    }
+
+    private void emitStructuredContext(final LogRecord record, final JsonContextEmitter emitter) {
+        final var captured = RecordFreezer.attachment(record, STRUCTURED_NAME, CapturedContext.class);
+        if (captured != null) {
+            captured.replay(emitter);
+            emitter.close();
+            return;
+        }
+
+        final var context = structuredContext;
+        if (context != null) {
+            context.emit(record, emitter);
+            emitter.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> findCustomData(final LogRecord record) {
+        final var frozen = RecordFreezer.attachment(record, NAME, Map.class);
+        if (frozen != null) {
+            return (Map<String, String>) frozen;
+        }
+        return customEntriesMapper != null ? customEntriesMapper.apply(record) : null;
+    }
+
+    // same output as OffsetDateTime.ofInstant(Instant.ofEpochMilli(millis), UTC).toString() without allocation
+    static void appendTimestamp(final Utf8Buffer out, final long millis) {
+        final long epochSecond = Math.floorDiv(millis, 1000);
+        final int milli = (int) Math.floorMod(millis, 1000);
+        final long epochDay = Math.floorDiv(epochSecond, 86_400);
+        final int secondOfDay = (int) Math.floorMod(epochSecond, 86_400);
+
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        final long z = epochDay + 719_468;
+        final long era = (z >= 0 ? z : z - 146_096) / 146_097;
+        final long dayOfEra = z - era * 146_097;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long mp = (5 * dayOfYear + 2) / 153;
+        final int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        final int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) { // sign and padding rules, not worth optimizing
+            out.appendAscii(OffsetDateTime.ofInstant(Instant.ofEpochMilli(millis), UTC).toString());
+            return;
+        }
+
+        out.appendPadded((int) year, 4).append((byte) '-')
+                .appendPadded(month, 2).append((byte) '-')
+                .appendPadded(day, 2).append((byte) 'T')
+                .appendPadded(secondOfDay / 3600, 2).append((byte) ':')
+                .appendPadded((secondOfDay / 60) % 60, 2);
+        final int second = secondOfDay % 60;
+        if (second > 0 || milli > 0) {
+            out.append((byte) ':').appendPadded(second, 2);
+            if (milli > 0) {
+                out.append((byte) '.').appendPadded(milli, 3);
+            }
+        }
+        out.append((byte) 'Z');
+    }
+
+    private static Fragment fragment(final ConcurrentMap<String, Fragment> cache, final String name, final String value) {
+        final var existing = cache.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (cache.size() >= MAX_FRAGMENTS) { // unexpected cardinality (generated classes/loggers), keep it bounded
+            cache.clear();
+        }
+        final var json = new StringBuilder(name.length() + value.length() + 8).append(",\"").append(name).append("\":");
+        JsonStrings.escape(value, json);
+        final var fragment = new Fragment(json.toString());
+        cache.putIfAbsent(value, fragment);
+        return fragment;
     }
 
     private void appendAdditionalFields(final StringBuilder json) {
-        additionalFields.forEach((k, v) -> json.append(",\"").append(k).append("\":").append(simpleEscape(v)));
+        if (defaultEncoding) {
+            json.append(additionalFieldsFragment.text);
+            return;
+        }
+        additionalFields.forEach((k, v) -> {
+            json.append(",\"").append(k).append("\":");
+            appendEscaped(json, v);
+        });
     }
 
-    private void appendMapperEnrichment(final LogRecord record, final StringBuilder json) {
-        if (customEntriesMapper != null) {
-            appendCustomData(json, customEntriesMapper.apply(record));
+    private void appendEscaped(final StringBuilder json, final String value) {
+        if (defaultEncoding) {
+            JsonStrings.escape(value, json);
+        } else {
+            json.append(simpleEscape(value));
         }
     }
 
@@ -127,6 +347,19 @@ public class JsonFormatter extends Formatter implements RecordFreezer {
         }
     }
 
+    /**
+     * Subclasses can customize {@link #format(LogRecord)}, {@link #simpleEscape(String)}, {@link #escape(String)}
+     * or {@link #toString(Throwable)} so the direct encoding (UTF-8 bytes, built-in escaping and exception rendering
+     * with its suppression window) is only used by default for this class.
+     * A subclass which does not customize them can return {@code true} to keep it.
+     * It is called once at construction time so it must not rely on the subclass state.
+     *
+     * @return {@code true} if the built-in encoding can be used.
+     */
+    protected boolean useDefaultEncoding() {
+        return getClass() == JsonFormatter.class;
+    }
+
     protected StringBuilder simpleEscape(final String value) {
         return JsonStrings.escape(value);
     }
@@ -136,11 +369,21 @@ public class JsonFormatter extends Formatter implements RecordFreezer {
         return JsonStrings.escape(value).toString();
     }
 
+    private String exception(final LogRecord record) {
+        return customThrowableRendering ? toString(record.getThrown()) : throwableRenderer.render(record.getThrown(), record.getMillis());
+    }
+
     protected String toString(final Throwable thrown) {
-        final var w = new StringWriter();
-        try (final PrintWriter writer = new PrintWriter(w)) {
-            thrown.printStackTrace(writer);
+        return throwableRenderer.render(thrown);
+    }
+
+    private static class Fragment {
+        private final String text;
+        private final byte[] bytes;
+
+        private Fragment(final String text) {
+            this.text = text;
+            this.bytes = text.getBytes(UTF_8);
         }
-        return w.toString();
     }
 }
@@ -15,70 +15,106 @@
  */
 package io.yupiik.logging.jul.formatter;
 
+import io.yupiik.logging.jul.api.Utf8Buffer;
+
 // inspired from tomcat JSONFilter but enforcing quoting of values (can need revisit but got proven fast enough)
 final class JsonStrings {
+    private static final char[] HEX_CHARS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    // for ASCII chars: 0 if the char is written as it is, 'u' for a unicode escape else the char to write after '\'
+    private static final byte[] ESCAPES = new byte[128];
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            ESCAPES[i] = 'u';
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES[0x8] = 'b';
+        ESCAPES[0xc] = 'f';
+        ESCAPES[0xa] = 'n';
+        ESCAPES[0xd] = 'r';
+        ESCAPES[0x9] = 't';
+    }
+
     private JsonStrings() {
         // no-op
     }
 
     static StringBuilder escape(final String value) {
         final var sb = new StringBuilder(value.length() + 20);
-        sb.append('"');
+        escape(value, sb);
+        return sb;
+    }
 
-        StringBuilder escaped = null;
-        int lastUnescapedStart = 0;
-        for (int i = 0; i < value.length(); i++) {
-            final char c = value.charAt(i);
-            if (c < 0x20 || c == 0x22 || c == 0x5c || Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
-                if (escaped == null) {
-                    escaped = new StringBuilder(value.length() + 20);
-                }
-                if (lastUnescapedStart < i) {
-                    escaped.append(value.subSequence(lastUnescapedStart, i));
-                }
-                lastUnescapedStart = i + 1;
-                final char popular = getPopularChar(c);
-                if (popular > 0) {
-                    escaped.append('\\').append(popular);
-                } else {
-                    escaped.append("\\u");
+    static void escape(final String value, final StringBuilder out) {
+        final int length = value.length();
+        out.ensureCapacity(out.length() + length + 2);
+        out.append('"');
+        int start = 0;
+        while (true) {
+            final int next = nextEscape(value, start, length);
+            if (start < next) {
+                out.append(value, start, next);
+            }
+            if (next == length) {
+                break;
+            }
 
-                    final var hex = "000" + Integer.toHexString(c);
-                    escaped.append(hex.substring(hex.length() - 4));
-                }
+            final char c = value.charAt(next);
+            final byte escape = c < 128 ? ESCAPES[c] : (byte) 'u';
+            out.append('\\');
+            if (escape == 'u') {
+                out.append('u')
+                        .append(HEX_CHARS[(c >> 12) & 0xF]).append(HEX_CHARS[(c >> 8) & 0xF])
+                        .append(HEX_CHARS[(c >> 4) & 0xF]).append(HEX_CHARS[c & 0xF]);
+            } else {
+                out.append((char) escape);
             }
+            start = next + 1;
         }
-        if (escaped == null) {
-            sb.append(value);
-        } else {
-            if (lastUnescapedStart < value.length()) {
-                escaped.append(value.subSequence(lastUnescapedStart, value.length()));
+        out.append('"');
+    }
+
+    // same as escape(String) but encodes directly in UTF-8
+    static void escape(final String value, final Utf8Buffer out) {
+        final int length = value.length();
+        out.ensureCapacity(length + 2);
+        out.append((byte) '"');
+        int start = 0;
+        while (true) {
+            final int next = nextEscape(value, start, length);
+            if (start < next) {
+                out.append(value, start, next);
+            }
+            if (next == length) {
+                break;
             }
-            sb.append(escaped);
-        }
 
-        sb.append('"');
-        return sb;
+            final char c = value.charAt(next);
+            final byte escape = c < 128 ? ESCAPES[c] : (byte) 'u';
+            out.append((byte) '\\');
+            if (escape == 'u') {
+                out.append((byte) 'u')
+                        .append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+                        .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+            } else {
+                out.append(escape);
+            }
+            start = next + 1;
+        }
+        out.append((byte) '"');
     }
 
-    private static char getPopularChar(char c) {
-        switch (c) {
-            case '"':
-            case '\\':
-            case '/':
-                return c;
-            case 0x8:
-                return 'b';
-            case 0xc:
-                return 'f';
-            case 0xa:
-                return 'n';
-            case 0xd:
-                return 'r';
-            case 0x9:
-                return 't';
-            default:
-                return 0;
+    // scans the run of chars which don't need any escaping (control chars, quote, backslash and surrogates do)
+    private static int nextEscape(final String value, final int from, final int length) {
+        for (int i = from; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 128 ? ESCAPES[c] != 0 : Character.isSurrogate(c)) {
+                return i;
+            }
         }
+        return length;
     }
 }
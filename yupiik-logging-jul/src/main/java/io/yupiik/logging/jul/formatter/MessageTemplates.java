@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.logging.LogRecord;
+
+/**
+ * Same output than {@link java.util.logging.Formatter#formatMessage(LogRecord)} but the common {@code {n}} templates
+ * are parsed once and rendered without {@link MessageFormat}.
+ * Templates with subformats ({@code {0,number,#.##}} for example), invalid ones or dates arguments
+ * still go through {@link MessageFormat}.
+ */
+final class MessageTemplates {
+    private static final int CACHE_SIZE = 512; // power of 2
+    private static final Entry[] CACHE = new Entry[CACHE_SIZE];
+    private static final ThreadLocal<Numbers> NUMBERS = new ThreadLocal<>();
+
+    private MessageTemplates() {
+        // no-op
+    }
+
+    static String format(final LogRecord record) {
+        String format = record.getMessage();
+        final var catalog = record.getResourceBundle();
+        if (catalog != null) {
+            try {
+                format = catalog.getString(format);
+            } catch (final MissingResourceException ex) {
+                format = record.getMessage();
+            }
+        }
+        try {
+            final var parameters = record.getParameters();
+            if (parameters == null || parameters.length == 0 || !hasArgument(format)) {
+                return format;
+            }
+            final var template = template(format);
+            if (template == null) {
+                return MessageFormat.format(format, parameters);
+            }
+            return template.format(parameters);
+        } catch (final Exception ex) {
+            return format;
+        }
+    }
+
+    // same check than the JUL formatter: only use a MessageFormat if there is a "{<digit>"
+    private static boolean hasArgument(final String format) {
+        int index = -1;
+        final int fence = format.length() - 1;
+        while ((index = format.indexOf('{', index + 1)) > -1) {
+            if (index >= fence) {
+                break;
+            }
+            final char digit = format.charAt(index + 1);
+            if (digit >= '0' && digit <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // direct mapped cache keyed by the message identity (messages are generally constants), races only re-parse
+    private static Template template(final String format) {
+        final int slot = System.identityHashCode(format) & (CACHE_SIZE - 1);
+        final var entry = CACHE[slot];
+        if (entry != null && entry.format == format) {
+            return entry.template;
+        }
+        final var template = parse(format);
+        CACHE[slot] = new Entry(format, template);
+        return template;
+    }
+
+    // mimics MessageFormat#applyPattern quoting rules, returns null when the pattern is not a plain {n} one
+    private static Template parse(final String pattern) {
+        final List<String> literals = new ArrayList<>();
+        final List<Integer> indexes = new ArrayList<>();
+        final var current = new StringBuilder(pattern.length());
+        boolean inQuote = false;
+        final int length = pattern.length();
+        for (int i = 0; i < length; i++) {
+            final char ch = pattern.charAt(i);
+            if (ch == '\'') {
+                if (i + 1 < length && pattern.charAt(i + 1) == '\'') {
+                    current.append(ch);
+                    i++;
+                } else {
+                    inQuote = !inQuote;
+                }
+            } else if (ch == '{' && !inQuote) {
+                final int end = pattern.indexOf('}', i + 1);
+                if (end < 0 || end == i + 1 || end - i - 1 > 9) {
+                    return null;
+                }
+                int index = 0;
+                for (int j = i + 1; j < end; j++) {
+                    final char digit = pattern.charAt(j);
+                    if (digit < '0' || digit > '9') {
+                        return null;
+                    }
+                    index = index * 10 + (digit - '0');
+                }
+                literals.add(current.toString());
+                indexes.add(index);
+                current.setLength(0);
+                i = end;
+            } else {
+                current.append(ch);
+            }
+        }
+        literals.add(current.toString());
+        return new Template(pattern, literals.toArray(new String[0]), indexes.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static final class Template {
+        private final String pattern;
+        private final String[] literals; // indexes.length + 1 items
+        private final int[] indexes;
+        private final int literalsLength;
+
+        private Template(final String pattern, final String[] literals, final int[] indexes) {
+            this.pattern = pattern;
+            this.literals = literals;
+            this.indexes = indexes;
+
+            int total = 0;
+            for (final var literal : literals) {
+                total += literal.length();
+            }
+            this.literalsLength = total;
+        }
+
+        String format(final Object[] parameters) {
+            for (final int index : indexes) {
+                if (index < parameters.length && parameters[index] instanceof Date) { // locale sensitive, keep the JVM behavior
+                    return MessageFormat.format(pattern, parameters);
+                }
+            }
+
+            final var out = new StringBuilder(literalsLength + 16 * indexes.length);
+            for (int i = 0; i < indexes.length; i++) {
+                out.append(literals[i]);
+                final int index = indexes[i];
+                if (index >= parameters.length) {
+                    out.append('{').append(index).append('}');
+                    continue;
+                }
+                final var value = parameters[index];
+                if (value == null) {
+                    out.append("null");
+                } else if (value instanceof String) {
+                    out.append((String) value);
+                } else if (value instanceof Number) {
+                    out.append(numberFormat().format(value));
+                } else {
+                    out.append(value);
+                }
+            }
+            return out.append(literals[indexes.length]).toString();
+        }
+
+        private static NumberFormat numberFormat() {
+            final var locale = Locale.getDefault(Locale.Category.FORMAT);
+            var numbers = NUMBERS.get();
+            if (numbers == null || !numbers.locale.equals(locale)) {
+                numbers = new Numbers(locale, NumberFormat.getInstance(locale));
+                NUMBERS.set(numbers);
+            }
+            return numbers.format;
+        }
+    }
+
+    private static class Numbers {
+        private final Locale locale;
+        private final NumberFormat format;
+
+        private Numbers(final Locale locale, final NumberFormat format) {
+            this.locale = locale;
+            this.format = format;
+        }
+    }
+
+    private static class Entry {
+        private final String format;
+        private final Template template; // null means MessageFormat must be used
+
+        private Entry(final String format, final Template template) {
+            this.format = format;
+            this.template = template;
+        }
+    }
+}
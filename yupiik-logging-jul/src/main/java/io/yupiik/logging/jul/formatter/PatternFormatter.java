@@ -15,8 +15,12 @@
  */
 package io.yupiik.logging.jul.formatter;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import io.yupiik.logging.jul.api.BytesFormatter;
+import io.yupiik.logging.jul.api.IdGenerator;
+import io.yupiik.logging.jul.api.SourceAware;
+import io.yupiik.logging.jul.api.LoggingContext;
+import io.yupiik.logging.jul.api.Utf8Buffer;
+
 import java.time.Duration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
@@ -24,22 +28,90 @@ import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.UUID;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
 
-import static java.util.stream.Collectors.joining;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class PatternFormatter extends Formatter implements BytesFormatter, SourceAware {
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final Item[] items;
+    private ThrowableRenderer throwableRenderer = ThrowableRenderer.DEFAULT;
+    private IdGenerator idGenerator = IdGenerators.RANDOM;
 
-public class PatternFormatter extends Formatter {
-    private final Collection<Item> items;
+    // subclasses can customize format() so only use the item byte encoding when they opt in
+    private final boolean bytesEncoding = useBytesEncoding();
 
     public PatternFormatter(final String pattern) {
-        this.items = parse(pattern);
+        this.items = parse(pattern).toArray(new Item[0]);
+    }
+
+    /**
+     * Subclasses can customize {@link #format(LogRecord)} so the items are only directly encoded as UTF-8 bytes
+     * by default for this class. A subclass which does not customize it can return {@code true} to keep it.
+     * It is called once at construction time so it must not rely on the subclass state.
+     *
+     * @return {@code true} if the items can be encoded without calling {@link #format(LogRecord)}.
+     */
+    protected boolean useBytesEncoding() {
+        return getClass() == PatternFormatter.class;
+    }
+
+    public void setThrowableRenderer(final ThrowableRenderer throwableRenderer) {
+        this.throwableRenderer = throwableRenderer == null ? ThrowableRenderer.DEFAULT : throwableRenderer;
+    }
+
+    public void setIdGenerator(final IdGenerator idGenerator) {
+        this.idGenerator = idGenerator == null ? IdGenerators.RANDOM : idGenerator;
     }
 
     @Override
     public String format(final LogRecord record) {
-        return items.stream().map(i -> i.extract(this, record)).collect(joining());
+        var builder = BUILDER.get();
+        if (builder.length() > 0) { // reentrant call (a message parameter logging), don't corrupt the outer record
+            builder = new StringBuilder(256);
+        }
+        try {
+            for (final var item : items) {
+                item.append(this, record, builder);
+            }
+            return builder.toString();
+        } finally {
+            builder.setLength(0);
+            if (builder.capacity() > 64 * 1024) { // don't keep a huge stack trace buffer forever
+                BUILDER.remove();
+            }
+        }
+    }
+
+    @Override
+    public void formatTo(final LogRecord record, final Utf8Buffer buffer) {
+        if (!bytesEncoding) {
+            buffer.append(format(record));
+            return;
+        }
+        for (final var item : items) {
+            item.append(this, record, buffer);
+        }
+    }
+
+    @Override
+    public boolean needsSource() {
+        if (!bytesEncoding) { // custom format()
+            return true;
+        }
+        for (final var item : items) {
+            if (item instanceof ClassName || item instanceof MethodName) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String formatMessage(final LogRecord record) {
+        return MessageTemplates.format(record);
     }
 
     private static Collection<Item> parse(final String pattern) {
@@ -171,6 +243,28 @@ public class PatternFormatter extends Formatter {
                             items.add(new Exception());
                             break;
                         }
+                        case 'X':
+                            i++;
+                            flushBuilder(items, builder);
+                            if (pattern.length() > i + 1 && pattern.charAt(i + 1) == '{') {
+                                final int end = pattern.indexOf('}', i);
+                                items.add(new ContextValue(pattern.substring(i + 2, end)));
+                                i = end;
+                            } else {
+                                items.add(new Context());
+                            }
+                            break;
+                        case 'f': {
+                            i++;
+                            flushBuilder(items, builder);
+                            final int start = i;
+                            i = eatIf("fingerprint", pattern, i);
+                            if (i == start) {
+                                throw new IllegalArgumentException("Only %fingerprint can start with %f");
+                            }
+                            items.add(new Fingerprint());
+                            break;
+                        }
                         case '%': // to output '%' you use '%%'
                             i++;
                             builder.append(current);
@@ -202,19 +296,28 @@ public class PatternFormatter extends Formatter {
     }
 
     private interface Item {
-        String extract(Formatter formatter, LogRecord record);
+        void append(Formatter formatter, LogRecord record, StringBuilder out);
+
+        void append(Formatter formatter, LogRecord record, Utf8Buffer out);
     }
 
     private static class Constant implements Item {
         private final String value;
+        private final byte[] bytes;
 
         private Constant(final String value) {
             this.value = value;
+            this.bytes = value.getBytes(UTF_8);
+        }
+
+        @Override
+        public void append(final Formatter formatter, final LogRecord record, final StringBuilder out) {
+            out.append(value);
         }
 
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
-            return value;
+        public void append(final Formatter formatter, final LogRecord record, final Utf8Buffer out) {
+            out.append(bytes);
         }
     }
 
@@ -222,29 +325,48 @@ public class PatternFormatter extends Formatter {
         private final Instant startup = Instant.now();
 
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
-            return Long.toString(Duration.between(startup, Instant.now()).toMillis());
+        public void append(final Formatter formatter, final LogRecord record, final StringBuilder out) {
+            out.append(Duration.between(startup, Instant.now()).toMillis());
+        }
+
+        @Override
+        public void append(final Formatter formatter, final LogRecord record, final Utf8Buffer out) {
+            out.append(Duration.between(startup, Instant.now()).toMillis());
         }
     }
 
-    private static class LoggerName implements Item {
+    private static abstract class StringItem implements Item {
+        protected abstract String extract(Formatter formatter, LogRecord record);
+
+        @Override
+        public void append(final Formatter formatter, final LogRecord record, final StringBuilder out) {
+            out.append(extract(formatter, record));
+        }
+
+        @Override
+        public void append(final Formatter formatter, final LogRecord record, final Utf8Buffer out) {
+            out.append(String.valueOf(extract(formatter, record)));
+        }
+    }
+
+    private static class LoggerName extends StringItem {
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
+        protected String extract(final Formatter formatter, final LogRecord record) {
             return record.getLoggerName();
         }
     }
 
-    private static class ClassName implements Item {
+    private static class ClassName extends StringItem {
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
+        protected String extract(final Formatter formatter, final LogRecord record) {
             final var value = record.getSourceClassName();
             return value == null ? "" : value;
         }
     }
 
-    private static class MethodName implements Item {
+    private static class MethodName extends StringItem {
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
+        protected String extract(final Formatter formatter, final LogRecord record) {
             final var value = record.getSourceMethodName();
             return value == null ? "" : value;
         }
@@ -252,66 +374,97 @@ public class PatternFormatter extends Formatter {
 
     private static class ThreadId implements Item {
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
-            return Integer.toString(record.getThreadID());
+        public void append(final Formatter formatter, final LogRecord record, final StringBuilder out) {
+            out.append(record.getThreadID());
+        }
+
+        @Override
+        public void append(final Formatter formatter, final LogRecord record, final Utf8Buffer out) {
+            out.append(record.getThreadID());
         }
     }
 
-    private static class ThreadName implements Item {
+    private static class ThreadName extends StringItem {
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
+        protected String extract(final Formatter formatter, final LogRecord record) {
             return Thread.currentThread().getName();
         }
     }
 
-    private static class Level implements Item {
+    private static class Level extends StringItem {
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
+        protected String extract(final Formatter formatter, final LogRecord record) {
             return record.getLevel().getName();
         }
     }
 
-    private static class Message implements Item {
+    private static class Message extends StringItem {
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
+        protected String extract(final Formatter formatter, final LogRecord record) {
             return formatter.formatMessage(record);
         }
     }
 
-    private static class Exception implements Item {
+    private static class Exception extends StringItem {
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
+        protected String extract(final Formatter formatter, final LogRecord record) {
             final var thrown = record.getThrown();
             if (thrown == null) {
                 return "";
             }
-            final StringWriter writer = new StringWriter();
-            try (final PrintWriter printWriter = new PrintWriter(writer)) {
-                thrown.printStackTrace(printWriter);
-            }
-            return '\n' + writer.toString().trim();
+            return '\n' + ((PatternFormatter) formatter).throwableRenderer.render(thrown, record.getMillis()).trim();
+        }
+    }
+
+    private static class ContextValue extends StringItem {
+        private final String key;
+
+        private ContextValue(final String key) {
+            this.key = key;
+        }
+
+        @Override
+        protected String extract(final Formatter formatter, final LogRecord record) {
+            final var value = LoggingContext.of(record).get(key);
+            return value == null ? "" : value;
+        }
+    }
+
+    private static class Context extends StringItem {
+        @Override
+        protected String extract(final Formatter formatter, final LogRecord record) {
+            final var context = LoggingContext.of(record);
+            return context.isEmpty() ? "" : context.toString();
+        }
+    }
+
+    private static class Fingerprint extends StringItem {
+        @Override
+        protected String extract(final Formatter formatter, final LogRecord record) {
+            final var thrown = record.getThrown();
+            return thrown == null ? "" : ThrowableRenderer.fingerprint(thrown);
         }
     }
 
-    private static class Uuid implements Item {
+    private static class Uuid extends StringItem {
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
-            return UUID.randomUUID().toString();
+        protected String extract(final Formatter formatter, final LogRecord record) {
+            return ((PatternFormatter) formatter).idGenerator.next();
         }
     }
 
-    private static class Date implements Item {
+    private static class Date extends StringItem {
         private static final ZoneId UTC = ZoneId.of("UTC");
 
-        private final DateTimeFormatter formatter;
+        private final TimestampCache timestamps;
 
         private Date(final DateTimeFormatter formatter) {
-            this.formatter = formatter;
+            this.timestamps = new TimestampCache(instant -> OffsetDateTime.ofInstant(instant, UTC).format(formatter));
         }
 
         @Override
-        public String extract(final Formatter formatter, final LogRecord record) {
-            return OffsetDateTime.ofInstant(record.getInstant(), UTC).format(this.formatter);
+        protected String extract(final Formatter formatter, final LogRecord record) {
+            return timestamps.format(record.getInstant());
         }
     }
 }
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Collections.newSetFromMap;
+
+/**
+ * Renders throwables as {@link Throwable#printStackTrace()} does (including the {@code ... N more} collapse
+ * of the frames in common with the enclosing trace) but caches the rendering of the last traces:
+ * the same failure logged in a loop is only rendered once.
+ * <p>
+ * It can also limit the number of frames rendered per throwable and fold consecutive frames of some packages
+ * (frameworks, proxies, reflection) into a {@code ... N folded} line.
+ * <p>
+ * Finally, with a suppression window, a trace is fully rendered only the first time its {@link #fingerprint(Throwable)}
+ * is seen in the window, then only {@code exception_ref=<fingerprint> <throwable>} is rendered.
+ */
+public final class ThrowableRenderer {
+    public static final ThrowableRenderer DEFAULT = new ThrowableRenderer(-1, List.of());
+
+    private static final String NL = System.lineSeparator();
+    private static final int CACHE_SIZE = 128; // power of 2
+    private static final int MAX_CACHED_LENGTH = 64 * 1024;
+    private static final int MAX_FINGERPRINTS = 4096;
+    private static final int FINGERPRINT_FRAMES = 5;
+    private static final int ROOT = 0;
+    private static final int CAUSE = 1;
+    private static final int SUPPRESSED = 2;
+
+    // throwables overriding printStackTrace don't use the JVM layout so they are rendered by themselves
+    private static final ClassValue<Boolean> CUSTOM_PRINTING = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            for (Class<?> current = type; current != null && current != Throwable.class; current = current.getSuperclass()) {
+                try {
+                    current.getDeclaredMethod("printStackTrace", PrintWriter.class);
+                    return true;
+                } catch (final NoSuchMethodException e) {
+                    try {
+                        current.getDeclaredMethod("printStackTrace", PrintStream.class);
+                        return true;
+                    } catch (final NoSuchMethodException e2) {
+                        // no-op, check parent
+                    }
+                }
+            }
+            return false;
+        }
+    };
+
+    private final int maxDepth;
+    private final String[] foldedPackages;
+    private final long suppressionWindow;
+    private final Entry[] cache = new Entry[CACHE_SIZE];
+    private final ConcurrentMap<String, Long> fullyRendered = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxDepth       max number of frames rendered per throwable, negative for no limit.
+     * @param foldedPackages packages (prefixes) of the frames to fold when they follow each other.
+     */
+    public ThrowableRenderer(final int maxDepth, final Collection<String> foldedPackages) {
+        this(maxDepth, foldedPackages, -1);
+    }
+
+    /**
+     * @param maxDepth          max number of frames rendered per throwable, negative for no limit.
+     * @param foldedPackages    packages (prefixes) of the frames to fold when they follow each other.
+     * @param suppressionWindow duration (in ms) during which a trace with the same fingerprint is not rendered again, disabled if not positive.
+     */
+    public ThrowableRenderer(final int maxDepth, final Collection<String> foldedPackages, final long suppressionWindow) {
+        this.maxDepth = maxDepth;
+        this.foldedPackages = foldedPackages.toArray(new String[0]);
+        this.suppressionWindow = suppressionWindow;
+    }
+
+    /**
+     * Stable hash of the class of the throwable and its top frames, it does not depend on the messages
+     * so the same failure has the same fingerprint whatever the data it was thrown for.
+     *
+     * @param throwable the throwable to identify.
+     * @return a 16 characters hexadecimal fingerprint.
+     */
+    public static String fingerprint(final Throwable throwable) {
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        hash = hash(hash, throwable.getClass().getName());
+        final var trace = throwable.getStackTrace();
+        for (int i = 0; i < Math.min(FINGERPRINT_FRAMES, trace.length); i++) {
+            final var frame = trace[i];
+            hash = hash(hash, frame.getClassName());
+            hash = hash(hash, frame.getMethodName());
+            hash = (hash ^ frame.getLineNumber()) * 0x100000001b3L;
+        }
+
+        final var hex = Long.toHexString(hash);
+        return hex.length() == 16 ? hex : "0".repeat(16 - hex.length()) + hex;
+    }
+
+    /**
+     * @param throwable the throwable to render.
+     * @param timestamp the record timestamp, used to check the suppression window.
+     * @return the full trace or its reference if it was already rendered in the suppression window.
+     */
+    public String render(final Throwable throwable, final long timestamp) {
+        if (suppressionWindow <= 0) {
+            return render(throwable);
+        }
+
+        final var fingerprint = fingerprint(throwable);
+        final var last = fullyRendered.get(fingerprint);
+        if (last != null && timestamp - last < suppressionWindow) {
+            return "exception_ref=" + fingerprint + ' ' + throwable + NL;
+        }
+        if (fullyRendered.size() >= MAX_FINGERPRINTS) { // keep it bounded, worse case we render again some traces
+            fullyRendered.clear();
+        }
+        fullyRendered.put(fingerprint, timestamp);
+        return render(throwable);
+    }
+
+    public String render(final Throwable throwable) {
+        if (CUSTOM_PRINTING.get(throwable.getClass())) {
+            final var writer = new StringWriter();
+            try (final PrintWriter printWriter = new PrintWriter(writer)) {
+                throwable.printStackTrace(printWriter);
+            }
+            return writer.toString();
+        }
+
+        final var key = new Key(collect(throwable));
+        final int slot = key.hash & (CACHE_SIZE - 1);
+        final var entry = cache[slot];
+        if (entry != null && entry.key.equals(key)) {
+            return entry.value;
+        }
+
+        final var out = new StringBuilder(256);
+        for (final var node : key.nodes) {
+            render(node, out);
+        }
+        final var value = out.toString();
+        if (value.length() <= MAX_CACHED_LENGTH) {
+            cache[slot] = new Entry(key, value);
+        }
+        return value;
+    }
+
+    // same traversal than Throwable#printStackTrace, it captures all what the rendering depends on
+    private static List<Node> collect(final Throwable throwable) {
+        final var nodes = new ArrayList<Node>();
+        final Set<Throwable> dejaVu = newSetFromMap(new IdentityHashMap<>());
+        dejaVu.add(throwable);
+        final var trace = throwable.getStackTrace();
+        nodes.add(new Node(ROOT, 0, String.valueOf(throwable), trace, 0, false));
+        for (final var suppressed : throwable.getSuppressed()) {
+            collectEnclosed(suppressed, trace, SUPPRESSED, 1, dejaVu, nodes);
+        }
+        final var cause = throwable.getCause();
+        if (cause != null) {
+            collectEnclosed(cause, trace, CAUSE, 0, dejaVu, nodes);
+        }
+        return nodes;
+    }
+
+    private static void collectEnclosed(final Throwable throwable, final StackTraceElement[] enclosingTrace,
+                                        final int caption, final int depth,
+                                        final Set<Throwable> dejaVu, final List<Node> nodes) {
+        if (!dejaVu.add(throwable)) {
+            nodes.add(new Node(caption, depth, String.valueOf(throwable), null, 0, true));
+            return;
+        }
+
+        final var trace = throwable.getStackTrace();
+        int m = trace.length - 1;
+        int n = enclosingTrace.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        nodes.add(new Node(caption, depth, String.valueOf(throwable), trace, trace.length - 1 - m, false));
+
+        for (final var suppressed : throwable.getSuppressed()) {
+            collectEnclosed(suppressed, trace, SUPPRESSED, depth + 1, dejaVu, nodes);
+        }
+        final var cause = throwable.getCause();
+        if (cause != null) {
+            collectEnclosed(cause, trace, CAUSE, depth, dejaVu, nodes);
+        }
+    }
+
+    private void render(final Node node, final StringBuilder out) {
+        final int depth = node.depth;
+        indent(out, depth);
+        switch (node.caption) {
+            case CAUSE:
+                out.append("Caused by: ");
+                break;
+            case SUPPRESSED:
+                out.append("Suppressed: ");
+                break;
+            default:
+        }
+        if (node.circular) {
+            out.append("[CIRCULAR REFERENCE: ").append(node.text).append(']').append(NL);
+            return;
+        }
+        out.append(node.text).append(NL);
+
+        final var trace = node.trace;
+        final int own = trace.length - node.framesInCommon;
+        int lines = 0;
+        int i = 0;
+        while (i < own) {
+            if (maxDepth >= 0 && lines >= maxDepth) {
+                break;
+            }
+            final int folded = foldedRun(trace, i, own);
+            indent(out, depth);
+            if (folded > 1) {
+                out.append("\t... ").append(folded).append(" folded").append(NL);
+                i += folded;
+            } else {
+                out.append("\tat ").append(trace[i]).append(NL);
+                i++;
+            }
+            lines++;
+        }
+        final int more = trace.length - i;
+        if (more != 0) {
+            indent(out, depth);
+            out.append("\t... ").append(more).append(" more").append(NL);
+        }
+    }
+
+    private int foldedRun(final StackTraceElement[] trace, final int from, final int end) {
+        if (foldedPackages.length == 0) {
+            return 0;
+        }
+        int i = from;
+        while (i < end && isFolded(trace[i].getClassName())) {
+            i++;
+        }
+        return i - from;
+    }
+
+    private boolean isFolded(final String className) {
+        for (final var prefix : foldedPackages) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long hash(final long seed, final String value) {
+        long hash = seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void indent(final StringBuilder out, final int depth) {
+        for (int i = 0; i < depth; i++) {
+            out.append('\t');
+        }
+    }
+
+    private static class Node {
+        private final int caption;
+        private final int depth;
+        private final String text;
+        private final StackTraceElement[] trace;
+        private final int framesInCommon;
+        private final boolean circular;
+
+        private Node(final int caption, final int depth, final String text, final StackTraceElement[] trace,
+                     final int framesInCommon, final boolean circular) {
+            this.caption = caption;
+            this.depth = depth;
+            this.text = text;
+            this.trace = trace;
+            this.framesInCommon = framesInCommon;
+            this.circular = circular;
+        }
+
+        private boolean same(final Node other) {
+            return caption == other.caption && depth == other.depth && framesInCommon == other.framesInCommon &&
+                    circular == other.circular && text.equals(other.text) && Arrays.equals(trace, other.trace);
+        }
+
+        private int hash() {
+            return 31 * (31 * (31 * caption + depth) + text.hashCode()) + Arrays.hashCode(trace);
+        }
+    }
+
+    private static class Key {
+        private final List<Node> nodes;
+        private final int hash;
+
+        private Key(final List<Node> nodes) {
+            this.nodes = nodes;
+
+            int h = 1;
+            for (final var node : nodes) {
+                h = 31 * h + node.hash();
+            }
+            this.hash = h ^ (h >>> 16);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final var other = (Key) o;
+            if (hash != other.hash || nodes.size() != other.nodes.size()) {
+                return false;
+            }
+            for (int i = 0; i < nodes.size(); i++) {
+                if (!nodes.get(i).same(other.nodes.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Entry {
+        private final Key key;
+        private final String value;
+
+        private Entry(final Key key, final String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
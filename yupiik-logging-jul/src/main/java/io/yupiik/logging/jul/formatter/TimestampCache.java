@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import java.time.Instant;
+import java.util.function.Function;
+
+/**
+ * Caches the rendering of the current second of a timestamp formatter and only patches the milliseconds digits
+ * for the records of the same second. Reads are lock-free, a concurrent miss just renders the second twice.
+ * <p>
+ * The renderer is probed for each second: if the milliseconds are not rendered as three fixed digits
+ * (custom fraction width, trimmed trailing zeros, ...) the cache falls back on caching the last rendered millisecond
+ * and, since it depends on the pattern and not on the second, the renderer is not probed anymore.
+ * Instants are truncated to the millisecond when the renderer does not render a sub-millisecond field (checked once),
+ * this is the common case since {@link java.util.logging.LogRecord} instants have a microsecond precision.
+ */
+final class TimestampCache {
+    private static final int[] PROBES = {0, 1, 10, 100, 999};
+    private static final int CONSTANT = -1;
+    private static final int EXACT = -2;
+
+    private final Function<Instant, String> renderer;
+    private final boolean subMillis;
+    private volatile boolean exact; // renderer not cacheable per second, only the last millisecond is
+    private volatile Entry entry = new Entry(Long.MIN_VALUE, -1, null, EXACT);
+
+    TimestampCache(final Function<Instant, String> renderer) {
+        this.renderer = renderer;
+        this.subMillis = rendersSubMillis(renderer);
+    }
+
+    String format(final Instant instant) {
+        if (subMillis && instant.getNano() % 1_000_000 != 0) { // sub-millisecond precision is rendered, not cacheable
+            return renderer.apply(instant);
+        }
+        return format(instant.toEpochMilli());
+    }
+
+    String format(final long epochMillis) {
+        final long second = Math.floorDiv(epochMillis, 1000);
+        final int millis = (int) Math.floorMod(epochMillis, 1000);
+
+        var current = entry;
+        if (current.second != second || (current.offset == EXACT && current.millis != millis)) {
+            current = exact ? new Entry(second, millis, renderer.apply(Instant.ofEpochMilli(epochMillis)), EXACT) : newEntry(second, millis);
+            entry = current;
+        }
+
+        final int offset = current.offset;
+        final var text = current.text;
+        if (offset < 0) {
+            return text;
+        }
+        return new StringBuilder(text.length())
+                .append(text, 0, offset)
+                .append((char) ('0' + millis / 100))
+                .append((char) ('0' + (millis / 10) % 10))
+                .append((char) ('0' + millis % 10))
+                .append(text, offset + 3, text.length())
+                .toString();
+    }
+
+    private Entry newEntry(final long second, final int millis) {
+        final long base = second * 1000;
+        final var probes = new String[PROBES.length];
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < PROBES.length; i++) {
+            probes[i] = renderer.apply(Instant.ofEpochMilli(base + PROBES[i]));
+            if (probes[i].length() != probes[0].length()) {
+                return exactEntry(second, millis);
+            }
+            for (int c = 0; c < probes[i].length(); c++) {
+                if (probes[i].charAt(c) != probes[0].charAt(c)) {
+                    if (first < 0 || c < first) {
+                        first = c;
+                    }
+                    last = Math.max(last, c);
+                }
+            }
+        }
+        if (first < 0) { // milliseconds are not rendered
+            return new Entry(second, millis, probes[0], CONSTANT);
+        }
+        if (last - first != 2 || !isMillis(probes, first)) {
+            return exactEntry(second, millis);
+        }
+        return new Entry(second, millis, probes[0], first);
+    }
+
+    private Entry exactEntry(final long second, final int millis) {
+        exact = true;
+        return new Entry(second, millis, renderer.apply(Instant.ofEpochMilli(second * 1000 + millis)), EXACT);
+    }
+
+    private static boolean rendersSubMillis(final Function<Instant, String> renderer) {
+        final long second = 1_600_000_000L;
+        for (final int millis : new int[]{0, 123, 999}) {
+            final var truncated = renderer.apply(Instant.ofEpochSecond(second, millis * 1_000_000L));
+            for (final int subMillis : new int[]{1, 1_000, 456_789, 999_999}) {
+                if (!truncated.equals(renderer.apply(Instant.ofEpochSecond(second, millis * 1_000_000L + subMillis)))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMillis(final String[] probes, final int offset) {
+        for (int i = 0; i < PROBES.length; i++) {
+            final int millis = PROBES[i];
+            final var text = probes[i];
+            if (text.charAt(offset) != '0' + millis / 100 ||
+                    text.charAt(offset + 1) != '0' + (millis / 10) % 10 ||
+                    text.charAt(offset + 2) != '0' + millis % 10) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Entry {
+        private final long second;
+        private final int millis;
+        private final String text;
+        private final int offset; // millis digits index or CONSTANT/EXACT
+
+        private Entry(final long second, final int millis, final String text, final int offset) {
+            this.second = second;
+            this.millis = millis;
+            this.text = text;
+            this.offset = offset;
+        }
+    }
+}
@@ -16,9 +16,14 @@
 package io.yupiik.logging.jul.handler;
 
 import io.yupiik.logging.jul.YupiikLoggerFactory;
+import io.yupiik.logging.jul.api.BatchPublisher;
+import io.yupiik.logging.jul.api.LoggingContext;
 import io.yupiik.logging.jul.api.RecordFreezer;
+import io.yupiik.logging.jul.api.SourceAware;
 
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -45,10 +50,14 @@ public class AsyncHandler extends Handler {
     private final BlockingQueue<LogRecord> queue;
     private final Worker[] workers;
     private final Integer queueSize;
+    private final int batchSize;
     private final AtomicBoolean running = new AtomicBoolean(true);
 
     private int needsContext = 0; // bit field, 1 == handler, 2 == formatter
 
+    private final String inferSource; // auto, true or false
+    private volatile boolean needsSource = true;
+
     private RecordFreezer delegateRecordFreezer;
     private RecordFreezer formatterRecordFreezer;
 
@@ -81,15 +90,23 @@ public class AsyncHandler extends Handler {
             delegateRecordFreezer = (RecordFreezer) delegate;
         }
 
-        if (delegate.getFormatter() != null) {
-            initFormatterContext(delegate.getFormatter());
-        }
+        // by default the caller is only inferred if the formatter prints it
+        inferSource = ofNullable(logManager.apply(className + ".inferSource"))
+                .map(String::trim)
+                .orElse("auto");
+
+        initFormatterContext(delegate.getFormatter());
 
         queueSize = ofNullable(logManager.apply(className + ".queue.size"))
                 .map(Integer::parseInt)
                 .orElse(1024);
         this.queue = new ArrayBlockingQueue<>(queueSize);
 
+        // records drained at once and given to the delegate in a single call if it is a BatchPublisher
+        batchSize = ofNullable(logManager.apply(className + ".batch.size"))
+                .map(Integer::parseInt)
+                .orElse(64);
+
         final var workerCount = ofNullable(logManager.apply(className + ".worker.count"))
                 .map(Integer::parseInt)
                 .orElse(1);
@@ -127,16 +144,25 @@ public class AsyncHandler extends Handler {
     @Override
     public void publish(final LogRecord record) {
         if (isLoggable(record)) {
-            // infer in context if needed
-            record.getSourceClassName();
-            record.getSourceMethodName();
-
-            var publishedRecord = record;
-            if ((needsContext & 1) != 0) {
-                publishedRecord = delegateRecordFreezer.apply(publishedRecord);
+            // infer in context if needed, it is the JDK inference so the source is the same as with a synchronous handler
+            if (needsSource) {
+                record.getSourceClassName();
+                record.getSourceMethodName();
             }
-            if ((needsContext & 2) != 0) {
-                publishedRecord = formatterRecordFreezer.apply(publishedRecord);
+
+            LogRecord publishedRecord;
+            if (needsContext == 0) { // at most the context is attached, no need of a carrier
+                publishedRecord = LoggingContext.freeze(record);
+            } else { // a single record owned until it is queued gets all the attachments
+                final var carrier = RecordFreezer.carrier(record);
+                publishedRecord = LoggingContext.freeze(carrier);
+                if ((needsContext & 1) != 0) {
+                    publishedRecord = delegateRecordFreezer.apply(publishedRecord);
+                }
+                if ((needsContext & 2) != 0) {
+                    publishedRecord = formatterRecordFreezer.apply(publishedRecord);
+                }
+                carrier.share();
             }
 
             if (!queue.offer(publishedRecord)) {
@@ -172,13 +198,46 @@ public class AsyncHandler extends Handler {
             needsContext &= ~2;
             formatterRecordFreezer = null;
         }
+        switch (inferSource) {
+            case "true":
+                needsSource = true;
+                break;
+            case "false":
+                needsSource = false;
+                break;
+            default: // auto
+                needsSource = !(newFormatter instanceof SourceAware) || ((SourceAware) newFormatter).needsSource();
+        }
     }
 
     private void doFlush(final int max) {
+        final int size = Math.max(1, batchSize);
+        final var batch = new ArrayList<LogRecord>(Math.min(max, size));
         int remaining = max;
-        LogRecord next;
-        while ((next = queue.poll()) != null && remaining-- > 0) {
-            delegate.publish(next);
+        while (remaining > 0 && queue.drainTo(batch, Math.min(remaining, size)) > 0) {
+            remaining -= batch.size();
+            publish(batch);
+            batch.clear();
+        }
+    }
+
+    // a failing record must not lose the rest of the batch: if publishAll fails the records are published one by one
+    // (the ones already written can be duplicated) and per record failures are reported to the delegate error manager
+    private void publish(final List<LogRecord> batch) {
+        if (batch.size() > 1 && delegate instanceof BatchPublisher) {
+            try {
+                ((BatchPublisher) delegate).publishAll(batch);
+                return;
+            } catch (final RuntimeException re) {
+                delegate.getErrorManager().error(re.getMessage(), re, ErrorManager.WRITE_FAILURE);
+            }
+        }
+        for (final var record : batch) {
+            try {
+                delegate.publish(record);
+            } catch (final RuntimeException re) {
+                delegate.getErrorManager().error(re.getMessage(), re, ErrorManager.WRITE_FAILURE);
+            }
         }
     }
 
@@ -190,16 +249,23 @@ public class AsyncHandler extends Handler {
         public Worker(final int index, final AsyncHandler root, final AtomicBoolean running) {
             super(() -> {
                 LogRecord next;
+                final var batch = new ArrayList<LogRecord>(Math.max(1, root.batchSize));
                 while (running.get()) {
                     try {
                         next = root.queue.poll(250, MILLISECONDS);
                         if (next != null) {
-                            root.delegate.publish(next);
+                            batch.add(next);
+                            if (root.batchSize > 1) {
+                                root.queue.drainTo(batch, root.batchSize - 1);
+                            }
+                            root.publish(batch);
                         }
                     } catch (final RuntimeException re) {
                         root.getErrorManager().error(re.getMessage(), re, ErrorManager.FORMAT_FAILURE);
                     } catch (final InterruptedException e) {
                         Thread.currentThread().interrupt();
+                    } finally {
+                        batch.clear();
                     }
                 }
             }, AsyncHandler.class.getName() + "-" + (index + 1));
@@ -15,20 +15,48 @@
  */
 package io.yupiik.logging.jul.handler;
 
+import io.yupiik.logging.jul.api.BatchPublisher;
+import io.yupiik.logging.jul.api.BytesFormatter;
+import io.yupiik.logging.jul.api.Utf8Buffer;
+import io.yupiik.logging.jul.reader.BloomIndex;
+import io.yupiik.logging.jul.reader.ColumnarArchive;
+import io.yupiik.logging.jul.reader.TimeIndex;
+
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -42,14 +70,23 @@ import java.util.logging.LogRecord;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
 
 // from https://github.com/apache/tomee/blob/master/tomee/tomee-juli/src/main/java/org/apache/tomee/jul/handler/rotating/LocalFileHandler.java
-public class LocalFileHandler extends Handler {
+public class LocalFileHandler extends Handler implements BatchPublisher {
     private final Clock clock;
 
     private long limit = 0;
@@ -64,13 +101,47 @@ public class LocalFileHandler extends Handler {
     private int compressionLevel;
     private long purgeExpiryDuration;
     private File archiveDir;
+    private boolean compressOnWrite;
+    private long compressOnWriteFlushInterval;
+    private boolean timeIndex;
+    private long timeIndexByteInterval;
+    private long timeIndexTimeInterval;
+    private List<String> bloomFields;
+    private double bloomFalsePositiveRate;
+    private boolean multiProcess;
+    private int maxRecordSize;
+    private long sizeCheckInterval;
+    private File lockFile;
 
     private volatile int currentIndex;
     private volatile long lastTimestamp;
     private volatile String date;
     private volatile PrintWriter writer;
-    private volatile int written;
+    private volatile CountingStream stream;
+    private volatile FileChannel channel; // plain mode, for batches
+    private volatile boolean utf8 = Charset.defaultCharset().equals(UTF_8);
+    private volatile GzipSegmentStream gzipStream;
+    private volatile TimeIndexWriter indexWriter;
+    private volatile int written; // only updated under the monitor of the current stream (or the write lock), read lock-free
     private volatile File currentFile;
+    private volatile long lastSyncFlush;
+    private volatile boolean pendingSyncFlush; // records in the deflater not yet sync flushed
+    private volatile ScheduledFuture<?> syncFlushTask;
+    private volatile FileChannel sharedChannel;
+    private volatile boolean sharedRotation;
+    private volatile long nextSharedCheck;
+    private long sharedCheckInterval;
+    private final AtomicLong sharedWritten = new AtomicLong();
+
+    // RoutingFileHandler bounds the open files (suspend) and schedules the eviction itself
+    private volatile boolean evictOnOpen = true;
+    private volatile File resumeFile;
+    private volatile int resumeWritten;
+    private volatile int opens; // incremented by openWriter() only (synchronized) so the router sees reopened files
+
+    private static final int MAX_GATHERED_BUFFERS = 1024; // IOV_MAX on linux
+    private static final int BATCH_BUFFER_SIZE = 64 * 1024;
+    private final BlockingQueue<ByteBuffer> bufferPool = new ArrayBlockingQueue<>(16);
 
     private final ReadWriteLock writerLock = new ReentrantReadWriteLock();
     private final Lock backgroundTaskLock = new ReentrantLock();
@@ -133,6 +204,45 @@ public class LocalFileHandler extends Handler {
         archiveFormat = replace(getProperty(className + ".archiveFormat", identity(), () -> archiveFormat));
         archiveFilenameRegex = Pattern.compile(fileNameReg + "\\." + archiveFormat);
 
+        // segments are directly written as gzip members so archiving is just a move
+        compressOnWrite = getProperty(className + ".compressOnWrite", Boolean::parseBoolean, () -> false);
+        if (compressOnWrite && !"gzip".equalsIgnoreCase(archiveFormat)) {
+            throw new IllegalArgumentException("compressOnWrite requires archiveFormat=gzip, got '" + archiveFormat + "'");
+        }
+        compressOnWriteFlushInterval = getProperty(className + ".compressOnWriteFlushInterval", v -> Duration.parse(v).toMillis(), () -> 1000L);
+        if (compressOnWrite && compressOnWriteFlushInterval > 0) { // records logged before an idle period are flushed too
+            final var self = new WeakReference<>(this);
+            syncFlushTask = SyncFlusher.EXECUTOR.scheduleWithFixedDelay(() -> {
+                final var handler = self.get();
+                if (handler == null) { // not closed but collected, an exception cancels the task
+                    throw new IllegalStateException("handler collected");
+                }
+                handler.periodicSyncFlush();
+            }, compressOnWriteFlushInterval, compressOnWriteFlushInterval, MILLISECONDS);
+        }
+
+        timeIndex = getProperty(className + ".timeIndex", Boolean::parseBoolean, () -> false);
+        timeIndexByteInterval = getProperty(className + ".timeIndexByteInterval", Long::parseLong, () -> 64 * 1024L);
+        timeIndexTimeInterval = getProperty(className + ".timeIndexTimeInterval", v -> Duration.parse(v).toMillis(), () -> 1000L);
+
+        bloomFields = getProperty(className + ".bloomFields", v -> Stream.of(v.split(","))
+                .map(String::trim)
+                .filter(it -> !it.isEmpty())
+                .collect(toList()), List::of);
+        bloomFalsePositiveRate = getProperty(className + ".bloomFalsePositiveRate", Double::parseDouble, () -> 0.01);
+
+        // several processes append to the same file, rotation is coordinated with a lock file
+        multiProcess = getProperty(className + ".multiProcess", Boolean::parseBoolean, () -> false);
+        if (multiProcess && (compressOnWrite || timeIndex)) {
+            throw new IllegalArgumentException("multiProcess is not compatible with compressOnWrite and timeIndex");
+        }
+        maxRecordSize = getProperty(className + ".maxRecordSize", Integer::parseInt, () -> 1024 * 1024);
+        sizeCheckInterval = limit > 0 ? Math.max(1, Math.min(64 * 1024, limit / 16)) : -1;
+        sharedCheckInterval = dateCheckInterval >= 0 ? dateCheckInterval : 5_000;
+        lockFile = new File(
+                new File(formatFilename(filenamePattern, zeroDate, 0)).getAbsoluteFile().getParentFile(),
+                '.' + new File(filenamePattern).getName().replace('%', '_') + ".lock");
+
         purgeExpiryDuration = getProperty(className + ".purgeOlderThan", v -> Duration.parse(v).toMillis(), () -> -1L);
         maxArchives = getProperty(className + ".maxArchives", Integer::parseInt, () -> -1);
 
@@ -164,10 +274,21 @@ public class LocalFileHandler extends Handler {
             lastTimestamp = now;
         }
 
+        if (multiProcess) {
+            publishShared(record, now);
+            return;
+        }
+
         try {
             writerLock.readLock().lock();
             rotateIfNeeded();
 
+            final var bytesFormatter = bytesFormatter();
+            if (bytesFormatter != null && !compressOnWrite) {
+                publishBytes(record, bytesFormatter);
+                return;
+            }
+
             final String result;
             try {
                 result = getFormatter().format(record);
@@ -177,10 +298,26 @@ public class LocalFileHandler extends Handler {
             }
 
             try {
-                if (writer != null) {
-                    writer.write(result);
-                    if (bufferSize < 0) {
-                        writer.flush();
+                final var out = stream;
+                if (writer != null && out != null) {
+                    synchronized (out) { // record boundaries for the index, batches and the byte counter
+                        final var index = indexWriter;
+                        if (index != null) {
+                            index.beforeWrite(record.getMillis());
+                        }
+                        writer.write(result);
+                        if (compressOnWrite) { // sync flush is costly for the compression ratio so only do it periodically
+                            writer.flush(); // only pushes the bytes to the deflater
+                            if (now - lastSyncFlush >= compressOnWriteFlushInterval) {
+                                lastSyncFlush = now;
+                                pendingSyncFlush = false;
+                                out.syncFlush();
+                            } else {
+                                pendingSyncFlush = true;
+                            }
+                        } else if (bufferSize < 0) {
+                            writer.flush();
+                        }
                     }
                 } else {
                     reportError(getClass().getSimpleName() + " is closed or not yet initialized, unable to log [" + result + "]", null, ErrorManager.WRITE_FAILURE);
@@ -193,19 +330,172 @@ public class LocalFileHandler extends Handler {
         }
     }
 
+    // UTF-8 formatters write directly the bytes to the file stream (the writer is only used for head/tail)
+    private void publishBytes(final LogRecord record, final BytesFormatter formatter) {
+        final var buffer = Utf8Buffers.acquire();
+        try {
+            formatter.formatTo(record, buffer);
+        } catch (final Exception e) {
+            buffer.reset();
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+
+        try {
+            final var out = stream;
+            if (writer == null || out == null) {
+                reportError(getClass().getSimpleName() + " is closed or not yet initialized, unable to log [" + buffer + "]", null, ErrorManager.WRITE_FAILURE);
+                return;
+            }
+            synchronized (out) { // same monitor as publish() and batches so records are never interleaved
+                final var index = indexWriter;
+                if (index != null) {
+                    index.beforeWrite(record.getMillis());
+                }
+                buffer.writeTo(out);
+                if (bufferSize < 0) {
+                    out.flush();
+                }
+            }
+        } catch (final Exception e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    private BytesFormatter bytesFormatter() {
+        final var formatter = getFormatter();
+        return utf8 && formatter instanceof BytesFormatter ? (BytesFormatter) formatter : null;
+    }
+
+    @Override
+    public synchronized void setEncoding(final String encoding) throws UnsupportedEncodingException {
+        super.setEncoding(encoding);
+        utf8 = (encoding != null ? Charset.forName(encoding) : Charset.defaultCharset()).equals(UTF_8);
+    }
+
+    /**
+     * Writes the records with gathering writes (a single system call for a batch of records) when the file is not
+     * compressed nor indexed, else it falls back on {@link #publish(LogRecord)} for each record.
+     *
+     * @param records the records to log.
+     */
+    @Override
+    public void publishAll(final List<LogRecord> records) {
+        if (compressOnWrite || timeIndex || multiProcess) {
+            records.forEach(this::publish);
+            return;
+        }
+
+        final var batch = new Batch();
+        final var bytesFormatter = bytesFormatter();
+        final var buffer = bytesFormatter != null ? Utf8Buffers.acquire() : null;
+        try {
+            writerLock.readLock().lock();
+            rotateIfNeeded();
+
+            final var encoder = bytesFormatter != null ? null : (getEncoding() != null ? Charset.forName(getEncoding()) : Charset.defaultCharset()).newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            for (final var record : records) {
+                if (!isLoggable(record)) {
+                    continue;
+                }
+
+                String result = null;
+                try {
+                    if (buffer != null) {
+                        bytesFormatter.formatTo(record, buffer);
+                    } else {
+                        result = getFormatter().format(record);
+                    }
+                } catch (final Exception e) {
+                    if (buffer != null) {
+                        buffer.reset();
+                    }
+                    reportError(null, e, ErrorManager.FORMAT_FAILURE);
+                    continue;
+                }
+
+                if (batch.size > 0 && (batch.buffers.size() >= MAX_GATHERED_BUFFERS || (limit > 0 && written + batch.size >= limit))) {
+                    writeBatch(batch);
+                    rotateIfNeeded();
+                }
+                if (buffer != null) {
+                    batch.add(buffer.array(), buffer.size());
+                    buffer.reset();
+                } else {
+                    batch.add(encoder, result);
+                }
+            }
+            writeBatch(batch);
+        } catch (final Exception e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        } finally {
+            writerLock.readLock().unlock();
+            batch.release();
+            if (buffer != null) {
+                buffer.reset();
+            }
+        }
+    }
+
+    private void writeBatch(final Batch batch) throws IOException {
+        if (batch.size == 0) {
+            return;
+        }
+        final var fileChannel = channel;
+        final var out = stream;
+        if (writer == null || fileChannel == null || out == null) {
+            batch.release();
+            reportError(getClass().getSimpleName() + " is closed or not yet initialized, unable to log a batch", null, ErrorManager.WRITE_FAILURE);
+            return;
+        }
+
+        final var buffers = batch.buffers.toArray(new ByteBuffer[0]);
+        for (final var buffer : buffers) {
+            buffer.flip();
+        }
+        synchronized (out) { // publish() calls and other batches use the same monitor to write to the stream
+            writer.flush(); // ensure previous records (in the writer or buffered stream) are written before
+            int first = 0;
+            while (first < buffers.length) {
+                fileChannel.write(buffers, first, buffers.length - first);
+                while (first < buffers.length && !buffers[first].hasRemaining()) {
+                    first++;
+                }
+            }
+            written += batch.size;
+        }
+        batch.release();
+    }
+
     private void rotateIfNeeded() {
         if (!closed && writer == null) {
-            try {
-                writerLock.readLock().unlock();
-                writerLock.writeLock().lock();
+            int opened;
+            do {
+                opened = opens;
+                try {
+                    writerLock.readLock().unlock();
+                    writerLock.writeLock().lock();
 
-                if (!closed && writer == null) {
-                    openWriter();
+                    if (!closed && writer == null) {
+                        final String currentDate = currentDate();
+                        if (currentDate != null && !date.equals(currentDate)) { // suspended the day before
+                            currentIndex = 0;
+                            date = currentDate;
+                            resumeFile = null;
+                            currentFile = null;
+                        }
+                        openWriter();
+                    }
+                } finally {
+                    writerLock.writeLock().unlock();
+                    writerLock.readLock().lock();
                 }
-            } finally {
-                writerLock.writeLock().unlock();
-                writerLock.readLock().lock();
-            }
+                // a concurrent suspend() can release the file before the read lock is taken again, retry unless opening fails
+            } while (!closed && writer == null && opened != opens);
             return;
         }
 
@@ -216,7 +506,7 @@ public class LocalFileHandler extends Handler {
                 writerLock.writeLock().lock();
 
                 if (shouldRotate(currentDate)) {
-                    close();
+                    closeWriter();
                     if (currentDate != null && !date.equals(currentDate)) {
                         currentIndex = 0;
                         date = currentDate;
@@ -237,33 +527,94 @@ public class LocalFileHandler extends Handler {
     @Override
     public void close() {
         closed = true;
+        final var task = syncFlushTask;
+        if (task != null) {
+            task.cancel(false);
+            syncFlushTask = null;
+        }
+        closeWriter();
+
+        // wait for bg tasks if running
+        backgroundTaskLock.lock();
+        backgroundTaskLock.unlock();
+    }
 
+    // closes the current file (with its tail) but keeps the handler usable, rotation reopens the next file
+    private void closeWriter() {
         writerLock.writeLock().lock();
         try {
+            if (multiProcess) { // no tail since other processes can still write the file
+                final var channel = sharedChannel;
+                sharedChannel = null;
+                currentFile = null;
+                if (channel != null) {
+                    channel.close();
+                }
+                return;
+            }
             if (writer == null) {
                 return;
             }
             writer.write(getFormatter().getTail(this));
             writer.flush();
             writer.close();
+            if (indexWriter != null) {
+                indexWriter.close();
+            }
             currentFile = null;
             writer = null;
+            stream = null;
+            channel = null;
+            gzipStream = null;
+            indexWriter = null;
         } catch (final Exception e) {
             reportError(null, e, ErrorManager.CLOSE_FAILURE);
         } finally {
             writerLock.writeLock().unlock();
         }
-
-        // wait for bg tasks if running
-        backgroundTaskLock.lock();
-        backgroundTaskLock.unlock();
     }
 
     @Override
     public void flush() {
+        if (multiProcess) { // each record is directly written
+            return;
+        }
         writerLock.readLock().lock();
         try {
-            writer.flush();
+            final var out = stream;
+            if (writer == null || out == null) {
+                return;
+            }
+            synchronized (out) {
+                writer.flush();
+                if (compressOnWrite) {
+                    out.syncFlush();
+                }
+            }
+        } catch (final Exception e) {
+            reportError(null, e, ErrorManager.FLUSH_FAILURE);
+        } finally {
+            writerLock.readLock().unlock();
+        }
+    }
+
+    private void periodicSyncFlush() {
+        if (!pendingSyncFlush || clock.instant().toEpochMilli() - lastSyncFlush < compressOnWriteFlushInterval) {
+            return;
+        }
+        writerLock.readLock().lock();
+        try {
+            final var currentWriter = writer;
+            final var out = stream;
+            if (currentWriter == null || out == null) {
+                return;
+            }
+            synchronized (out) {
+                lastSyncFlush = clock.instant().toEpochMilli();
+                pendingSyncFlush = false;
+                currentWriter.flush();
+                out.syncFlush();
+            }
         } catch (final Exception e) {
             reportError(null, e, ErrorManager.FLUSH_FAILURE);
         } finally {
@@ -279,25 +630,53 @@ public class LocalFileHandler extends Handler {
         OutputStream fos = null;
         try {
             File pathname;
-            do {
-                pathname = new File(formatFilename(filenamePattern, date, currentIndex));
-                final File parent = pathname.getParentFile();
-                if (!parent.isDirectory() && !parent.mkdirs()) {
-                    reportError("Unable to create [" + parent + "]", null, ErrorManager.OPEN_FAILURE);
-                    writer = null;
-                    currentFile = null;
-                    return;
-                }
-                currentIndex++;
-            } while (!overwrite && pathname.isFile()); // loop to ensure we don't overwrite existing files
+            final var resume = resumeFile;
+            resumeFile = null;
+            if (resume != null && resume.isFile()) { // reopened after a suspension, continue the same file
+                pathname = resume;
+            } else {
+                do {
+                    pathname = new File(formatFilename(filenamePattern, date, currentIndex) + (compressOnWrite ? "." + archiveFormat : ""));
+                    final File parent = pathname.getParentFile();
+                    if (!parent.isDirectory() && !parent.mkdirs()) {
+                        reportError("Unable to create [" + parent + "]", null, ErrorManager.OPEN_FAILURE);
+                        writer = null;
+                        currentFile = null;
+                        return;
+                    }
+                    currentIndex++;
+                } while (!overwrite && pathname.isFile()); // loop to ensure we don't overwrite existing files
+            }
 
-            fos = new FileOutputStream(pathname, !truncateIfExists);
-            final var os = new CountingStream(bufferSize > 0 ? new BufferedOutputStream(fos, bufferSize) : fos);
+            final boolean resumed = pathname == resume;
+            final long base = truncateIfExists && !resumed ? 0 : pathname.length();
+            final var fileOutputStream = new FileOutputStream(pathname, resumed || !truncateIfExists);
+            fos = fileOutputStream;
+            final var fileStream = bufferSize > 0 ? new BufferedOutputStream(fos, bufferSize) : fos;
+            final CountingStream os;
+            if (compressOnWrite) {
+                gzipStream = new GzipSegmentStream(fileStream, base);
+                os = new CountingStream(gzipStream, true);
+            } else {
+                gzipStream = null;
+                os = new CountingStream(fileStream, false);
+            }
             final var encoding = getEncoding();
             final var streamWriter = (encoding != null) ? new OutputStreamWriter(os, encoding) : new OutputStreamWriter(os);
             writer = new PrintWriter(streamWriter, false);
-            writer.write(getFormatter().getHead(this));
+            stream = os;
+            channel = compressOnWrite ? null : fileOutputStream.getChannel();
+            indexWriter = timeIndex ? new TimeIndexWriter(new File(pathname.getPath() + TimeIndex.EXTENSION), compressOnWrite ? 0 : base) : null;
+            if (resumed) {
+                written = resumeWritten;
+            } else {
+                writer.write(getFormatter().getHead(this));
+                writer.flush(); // bytes formatters write directly to the stream
+            }
             currentFile = pathname;
+            lastSyncFlush = beforeRotation;
+            pendingSyncFlush = false;
+            opens++;
         } catch (final Exception e) {
             reportError(null, e, ErrorManager.OPEN_FAILURE);
             writer = null;
@@ -313,6 +692,9 @@ public class LocalFileHandler extends Handler {
             writerLock.writeLock().unlock();
         }
 
+        if (!evictOnOpen) {
+            return;
+        }
         backgroundTaskLock.lock();
         try {
             evict(beforeRotation);
@@ -323,6 +705,297 @@ public class LocalFileHandler extends Handler {
         }
     }
 
+    void setEvictOnOpen(final boolean evictOnOpen) {
+        this.evictOnOpen = evictOnOpen;
+    }
+
+    // archiving/purge pass when evictOnOpen is disabled, skipped if one is already running
+    void runEviction() {
+        if (!backgroundTaskLock.tryLock()) {
+            return;
+        }
+        try {
+            evict(clock.instant().toEpochMilli());
+        } catch (final Exception e) {
+            reportError("Can't do the log eviction", e, ErrorManager.GENERIC_FAILURE);
+        } finally {
+            backgroundTaskLock.unlock();
+        }
+    }
+
+    // releases the file descriptor, the next record reopens the same file (a new one with compressOnWrite or timeIndex)
+    void suspend() {
+        writerLock.writeLock().lock();
+        try {
+            if (writer == null) {
+                return;
+            }
+            writer.flush();
+            writer.close();
+            if (indexWriter != null) {
+                indexWriter.close();
+            }
+            final boolean resumable = !compressOnWrite && !timeIndex;
+            resumeFile = resumable ? currentFile : null;
+            resumeWritten = written;
+            if (!resumable) { // can be archived now
+                currentFile = null;
+            }
+            writer = null;
+            stream = null;
+            channel = null;
+            gzipStream = null;
+            indexWriter = null;
+        } catch (final Exception e) {
+            reportError(null, e, ErrorManager.CLOSE_FAILURE);
+        } finally {
+            writerLock.writeLock().unlock();
+        }
+    }
+
+    boolean isOpen() {
+        return writer != null;
+    }
+
+    // changes each time a file is opened (rotation or reopening after suspend())
+    int openCount() {
+        return opens;
+    }
+
+    // a routed handler recreated for a key continues the last file of the day instead of starting a new one
+    void resumeLastFile() {
+        if (compressOnWrite || timeIndex || multiProcess || overwrite || truncateIfExists) {
+            return;
+        }
+        writerLock.writeLock().lock();
+        try {
+            if (writer != null) {
+                return;
+            }
+            File last = null;
+            int index = currentIndex;
+            for (File file = new File(formatFilename(filenamePattern, date, index)); file.isFile(); file = new File(formatFilename(filenamePattern, date, index))) {
+                last = file;
+                index++;
+            }
+            if (last != null) {
+                resumeFile = last;
+                resumeWritten = (int) Math.min(Integer.MAX_VALUE, last.length());
+                currentIndex = index;
+            }
+        } finally {
+            writerLock.writeLock().unlock();
+        }
+    }
+
+    // each record is a single O_APPEND write so records of several processes never interleave
+    private void publishShared(final LogRecord record, final long now) {
+        final var bytesFormatter = bytesFormatter();
+        if (bytesFormatter == null) {
+            publishShared(record, null, null, now);
+            return;
+        }
+        final var buffer = Utf8Buffers.acquire();
+        try {
+            publishShared(record, bytesFormatter, buffer, now);
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    private void publishShared(final LogRecord record, final BytesFormatter bytesFormatter, final Utf8Buffer formatted, final long now) {
+        final byte[] bytes;
+        final int length;
+        try {
+            if (bytesFormatter != null) {
+                bytesFormatter.formatTo(record, formatted);
+                bytes = formatted.array();
+                length = formatted.size();
+            } else {
+                bytes = toBytes(getFormatter().format(record));
+                length = bytes.length;
+            }
+        } catch (final Exception e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+        final ByteBuffer buffer;
+        if (length > maxRecordSize) { // keep the write bounded, the record is truncated
+            int end = maxRecordSize - 1;
+            if (utf8) { // don't cut a code point, drop its first bytes too
+                while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+                    end--;
+                }
+            }
+            bytes[end] = '\n';
+            buffer = ByteBuffer.wrap(bytes, 0, end + 1);
+        } else {
+            buffer = ByteBuffer.wrap(bytes, 0, length);
+        }
+
+        writerLock.readLock().lock();
+        try {
+            if (closed) {
+                reportError(getClass().getSimpleName() + " is closed, unable to log", null, ErrorManager.WRITE_FAILURE);
+                return;
+            }
+            // other processes can have rotated (then archived) our file, low volume processes check it periodically
+            if (sharedChannel != null && !sharedRotation && now >= nextSharedCheck) {
+                nextSharedCheck = now + sharedCheckInterval;
+                if (shouldRotateShared() || sharedFileChanged()) {
+                    sharedRotation = true;
+                }
+            }
+            if (sharedChannel == null || sharedRotation) {
+                writerLock.readLock().unlock();
+                writerLock.writeLock().lock();
+                try {
+                    if (!closed && (sharedChannel == null || sharedRotation)) {
+                        rotateShared();
+                    }
+                } finally {
+                    writerLock.writeLock().unlock();
+                    writerLock.readLock().lock();
+                }
+            }
+
+            final var channel = sharedChannel;
+            if (channel == null) {
+                reportError(getClass().getSimpleName() + " can't open its file, unable to log", null, ErrorManager.WRITE_FAILURE);
+                return;
+            }
+            final int size = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            // other processes write too so our counter is not the file size, check it periodically
+            if (sizeCheckInterval > 0 && sharedWritten.addAndGet(size) >= sizeCheckInterval) {
+                sharedWritten.set(0);
+                if (channel.size() >= limit) {
+                    sharedRotation = true;
+                }
+            }
+        } catch (final Exception e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        } finally {
+            writerLock.readLock().unlock();
+        }
+    }
+
+    private boolean shouldRotateShared() {
+        final String currentDate = noRotation ? null : currentDate();
+        return currentDate != null && !date.equals(currentDate);
+    }
+
+    // the lock file is small and only rewritten on rotation, no need to lock it to compare it to our current file
+    private boolean sharedFileChanged() {
+        final var file = currentFile;
+        if (file == null || !file.isFile()) {
+            return true;
+        }
+        try {
+            return !(date + '\n' + file.getName()).equals(Files.readString(lockFile.toPath(), UTF_8));
+        } catch (final IOException | RuntimeException e) { // let rotateShared() handle it with the lock
+            return true;
+        }
+    }
+
+    // under the write lock: the lock file stores the date and name of the current file of all the processes
+    private void rotateShared() {
+        final long now = clock.instant().toEpochMilli();
+        sharedRotation = false;
+        sharedWritten.set(0);
+        nextSharedCheck = now + sharedCheckInterval;
+
+        final var parent = lockFile.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            reportError("Unable to create [" + parent + "]", null, ErrorManager.OPEN_FAILURE);
+            return;
+        }
+        try (final var lockChannel = FileChannel.open(lockFile.toPath(), CREATE, READ, WRITE);
+             final var ignored = lock(lockChannel)) {
+            final String currentDate = noRotation ? null : currentDate();
+            if (currentDate != null && !date.equals(currentDate)) {
+                currentIndex = 0;
+                date = currentDate;
+            }
+
+            final var content = ByteBuffer.allocate((int) Math.min(lockChannel.size(), 8192));
+            while (content.hasRemaining() && lockChannel.read(content, content.position()) > 0) {
+                // no-op
+            }
+            final var state = new String(content.array(), 0, content.position(), UTF_8).split("\n");
+
+            File target = null;
+            if (state.length == 2 && state[0].equals(date)) { // another process (or us before) already opened a file
+                final var candidate = new File(parent, state[1]);
+                if (candidate.isFile() && (limit <= 0 || candidate.length() < limit)) {
+                    target = candidate;
+                }
+            }
+            if (target == null) {
+                do {
+                    target = new File(formatFilename(filenamePattern, date, currentIndex)).getAbsoluteFile();
+                    currentIndex++;
+                } while (target.isFile());
+                if (!target.getParentFile().equals(parent)) {
+                    throw new IllegalArgumentException("multiProcess requires the date and index to be in the file name: " + filenamePattern);
+                }
+
+                final var newState = ByteBuffer.wrap((date + '\n' + target.getName()).getBytes(UTF_8));
+                lockChannel.truncate(0);
+                while (newState.hasRemaining()) {
+                    lockChannel.write(newState, newState.position());
+                }
+                lockChannel.force(false);
+            }
+
+            if (!target.equals(currentFile) || sharedChannel == null) {
+                final var channel = FileChannel.open(target.toPath(), CREATE, WRITE, APPEND);
+                if (channel.size() == 0) {
+                    channel.write(ByteBuffer.wrap(toBytes(getFormatter().getHead(this))));
+                }
+                final var previous = sharedChannel;
+                sharedChannel = channel;
+                currentFile = target;
+                if (previous != null) {
+                    previous.close();
+                }
+            }
+
+            backgroundTaskLock.lock(); // in the file lock so processes don't archive the same files concurrently
+            try {
+                evict(now);
+            } catch (final Exception e) {
+                reportError("Can't do the log eviction", e, ErrorManager.GENERIC_FAILURE);
+            } finally {
+                backgroundTaskLock.unlock();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reportError(null, e, ErrorManager.OPEN_FAILURE);
+        } catch (final Exception e) {
+            reportError(null, e, ErrorManager.OPEN_FAILURE);
+        }
+    }
+
+    // file locks are per JVM so another handler of this JVM can own it (several applications in the same JVM)
+    private FileLock lock(final FileChannel channel) throws IOException, InterruptedException {
+        while (true) {
+            try {
+                return channel.lock();
+            } catch (final OverlappingFileLockException ofle) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private byte[] toBytes(final String value) throws UnsupportedEncodingException {
+        final var encoding = getEncoding();
+        return encoding != null ? value.getBytes(encoding) : value.getBytes(Charset.defaultCharset());
+    }
+
     private void evict(final long now) {
         if (purgeExpiryDuration > 0) {
             purgeArchives(now);
@@ -346,6 +1019,7 @@ public class LocalFileHandler extends Handler {
                             // dont try to delete on exit cause we will find it again
                             reportError("Can't delete " + archive.getAbsolutePath() + ".", null, ErrorManager.GENERIC_FAILURE);
                         }
+                        deleteIndex(archive);
                     }
                 } catch (final IOException e) {
                     throw new IllegalStateException(e);
@@ -356,7 +1030,8 @@ public class LocalFileHandler extends Handler {
 
     private void archiveIfNeeded(final long now) {
         final File[] logs = new File(formatFilename(filenamePattern, zeroDate, 0)).getParentFile()
-                .listFiles((dir, name) -> filenameRegex.matcher(name).matches());
+                .listFiles((dir, name) -> filenameRegex.matcher(name).matches() ||
+                        (compressOnWrite && archiveFilenameRegex.matcher(name).matches()));
 
         if (logs != null) {
             for (final var file : logs) {
@@ -389,7 +1064,11 @@ public class LocalFileHandler extends Handler {
                         }).toArray(File[]::new);
                 Stream.of(sorted)
                         .limit(toDelete)
-                        .forEach(File::delete);
+                        .forEach(it -> {
+                            if (it.delete()) {
+                                deleteIndex(it);
+                            }
+                        });
             }
         }
     }
@@ -407,7 +1086,8 @@ public class LocalFileHandler extends Handler {
     }
 
     private void createArchive(final File source) {
-        final File target = new File(archiveDir, source.getName() + "." + archiveFormat);
+        final boolean compressed = compressOnWrite && archiveFilenameRegex.matcher(source.getName()).matches();
+        final File target = new File(archiveDir, compressed ? source.getName() : (source.getName() + "." + archiveFormat));
         if (target.isFile()) {
             return;
         }
@@ -417,12 +1097,33 @@ public class LocalFileHandler extends Handler {
             throw new IllegalStateException("Can't create " + parentFile.getAbsolutePath());
         }
 
+        if (!bloomFields.isEmpty()) { // written first so readers never see an archive without its filter
+            createBloomIndex(source, compressed, target);
+        }
+
+        if (compressed) { // already a gzip file, no need to read it again
+            try {
+                Files.move(source.toPath(), target.toPath());
+                moveIndex(source, target);
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+
         if (archiveFormat.equalsIgnoreCase("gzip")) {
             try (final var outputStream = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(target)))) {
                 Files.copy(source.toPath(), outputStream);
             } catch (final IOException e) {
                 throw new IllegalStateException(e);
             }
+        } else if (archiveFormat.equalsIgnoreCase(ColumnarArchive.FORMAT)) {
+            try (final var inputStream = new BufferedInputStream(new FileInputStream(source));
+                 final var outputStream = new BufferedOutputStream(new FileOutputStream(target))) {
+                ColumnarArchive.encode(inputStream, outputStream, compressionLevel);
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
         } else { // consider file defines a zip whatever extension it is
             try (final var outputStream = new ZipOutputStream(new FileOutputStream(target))) {
                 outputStream.setLevel(compressionLevel);
@@ -443,11 +1144,50 @@ public class LocalFileHandler extends Handler {
             if (!Files.deleteIfExists(source.toPath())) {
                 reportError("Can't delete " + source.getAbsolutePath() + ".", null, ErrorManager.GENERIC_FAILURE);
             }
+            if (archiveFormat.equalsIgnoreCase(ColumnarArchive.FORMAT)) { // offsets are meaningless once transcoded
+                deleteIndex(source);
+            } else {
+                moveIndex(source, target);
+            }
         } catch (final IOException e) {
             throw new IllegalStateException(e);
         }
     }
 
+    private void createBloomIndex(final File source, final boolean compressed, final File target) {
+        final var encoding = getEncoding();
+        try (final var in = compressed ?
+                new GZIPInputStream(new FileInputStream(source), 8192) :
+                new BufferedInputStream(new FileInputStream(source))) {
+            BloomIndex.write(
+                    in, encoding != null ? Charset.forName(encoding) : Charset.defaultCharset(),
+                    bloomFields, bloomFalsePositiveRate, BloomIndex.indexOf(target.toPath()));
+        } catch (final IOException e) { // the archive is still usable, it will just be read by lookups
+            reportError("Can't index " + source.getAbsolutePath() + ".", e, ErrorManager.GENERIC_FAILURE);
+        }
+    }
+
+    private void moveIndex(final File source, final File target) throws IOException {
+        final var index = indexOf(source);
+        if (Files.exists(index)) {
+            Files.move(index, indexOf(target), REPLACE_EXISTING);
+        }
+    }
+
+    private void deleteIndex(final File archive) {
+        for (final var index : List.of(indexOf(archive), BloomIndex.indexOf(archive.toPath()))) {
+            try {
+                Files.deleteIfExists(index);
+            } catch (final IOException e) {
+                reportError("Can't delete " + index + ".", e, ErrorManager.GENERIC_FAILURE);
+            }
+        }
+    }
+
+    private Path indexOf(final File file) {
+        return TimeIndex.indexOf(file.toPath());
+    }
+
     protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
         final var value = LogManager.getLogManager().getProperty(name);
         if (value == null) {
@@ -495,14 +1235,204 @@ public class LocalFileHandler extends Handler {
         return System.getProperty(propName);
     }
 
+    // writes a gzip file as a sequence of members so readers can start to inflate from a member offset
+    private final class GzipSegmentStream extends OutputStream {
+        private final OutputStream out;
+        private long position;
+        private long memberStart;
+        private boolean memberHasData;
+        private GzipMember current;
+
+        private GzipSegmentStream(final OutputStream out, final long base) throws IOException {
+            this.out = new OutputStream() { // tracks the compressed offset
+                @Override
+                public void write(final int b) throws IOException {
+                    out.write(b);
+                    position++;
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    out.write(b, off, len);
+                    position += len;
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+            this.position = base;
+            this.memberStart = base;
+            this.current = new GzipMember(this.out, compressionLevel);
+        }
+
+        // @return the offset of the member the next bytes will be written to
+        private synchronized long newMember() throws IOException {
+            if (!memberHasData) {
+                return memberStart;
+            }
+            current.finish();
+            current.end();
+            memberStart = position;
+            memberHasData = false;
+            current = new GzipMember(out, compressionLevel);
+            return memberStart;
+        }
+
+        @Override
+        public synchronized void write(final int b) throws IOException {
+            current.write(b);
+            memberHasData = true;
+        }
+
+        @Override
+        public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+            current.write(b, off, len);
+            memberHasData = true;
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            current.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            current.close();
+        }
+    }
+
+    private static final class GzipMember extends GZIPOutputStream {
+        private GzipMember(final OutputStream out, final int level) throws IOException {
+            super(out, 8192, true);
+            def.setLevel(level);
+        }
+
+        private void end() {
+            def.end();
+        }
+    }
+
+    private final class TimeIndexWriter implements AutoCloseable {
+        private final OutputStream out;
+        private final byte[] entry = new byte[TimeIndex.ENTRY_SIZE];
+        private final long base;
+        private long lastOffset = -1;
+        private long lastTimestamp;
+
+        private TimeIndexWriter(final File file, final long base) throws IOException {
+            this.out = new FileOutputStream(file, !truncateIfExists); // one write per entry, no need of a buffer
+            this.base = base;
+        }
+
+        private void beforeWrite(final long timestamp) throws IOException {
+            final long estimated = written;
+            if (lastOffset >= 0 && (estimated == lastOffset || (
+                    (timeIndexByteInterval <= 0 || estimated - lastOffset < timeIndexByteInterval) &&
+                            (timeIndexTimeInterval <= 0 || timestamp - lastTimestamp < timeIndexTimeInterval)))) {
+                return;
+            }
+
+            writer.flush(); // ensure all previous records went through the counter
+            final long offset = written;
+            final long memberOffset = gzipStream != null ? gzipStream.newMember() : -1;
+
+            putLong(entry, 0, timestamp);
+            putLong(entry, Long.BYTES, base + offset);
+            putLong(entry, 2 * Long.BYTES, memberOffset);
+            out.write(entry);
+
+            lastOffset = offset;
+            lastTimestamp = timestamp;
+        }
+
+        private void putLong(final byte[] buffer, final int offset, final long value) {
+            for (int i = 0; i < Long.BYTES; i++) { // big endian as DataInputStream
+                buffer[offset + i] = (byte) (value >>> (8 * (Long.BYTES - 1 - i)));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    // encoded records of a batch, buffers are direct ones to avoid a copy when writing them and are pooled
+    private final class Batch {
+        private final List<ByteBuffer> buffers = new ArrayList<>();
+        private long size;
+
+        private void add(final CharsetEncoder encoder, final String value) {
+            final var chars = CharBuffer.wrap(value);
+            var buffer = buffers.isEmpty() ? next() : buffers.get(buffers.size() - 1);
+            encoder.reset();
+            boolean flushing = false;
+            while (true) {
+                final int before = buffer.position();
+                final var result = flushing ? encoder.flush(buffer) : encoder.encode(chars, buffer, true);
+                size += buffer.position() - before;
+                if (result.isOverflow()) {
+                    buffer = next();
+                } else if (!flushing) {
+                    flushing = true;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void add(final byte[] bytes, final int length) {
+            var buffer = buffers.isEmpty() ? next() : buffers.get(buffers.size() - 1);
+            int offset = 0;
+            while (offset < length) {
+                if (!buffer.hasRemaining()) {
+                    buffer = next();
+                }
+                final int count = Math.min(buffer.remaining(), length - offset);
+                buffer.put(bytes, offset, count);
+                offset += count;
+            }
+            size += length;
+        }
+
+        private ByteBuffer next() {
+            final var pooled = bufferPool.poll();
+            final var buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(BATCH_BUFFER_SIZE);
+            buffers.add(buffer);
+            return buffer;
+        }
+
+        private void release() {
+            for (final var buffer : buffers) {
+                bufferPool.offer(buffer.clear());
+            }
+            buffers.clear();
+            size = 0;
+        }
+    }
+
+    // not synchronized itself: writers hold its monitor (or the write lock) so the counter is never updated concurrently
     private final class CountingStream extends OutputStream {
         private final OutputStream out;
+        private final boolean deferFlush; // for gzip, flush() means sync flush so it is only done through syncFlush()
 
-        private CountingStream(final OutputStream out) {
+        private CountingStream(final OutputStream out, final boolean deferFlush) {
             this.out = out;
+            this.deferFlush = deferFlush;
             written = 0;
         }
 
+        private void syncFlush() throws IOException {
+            out.flush();
+        }
+
         @Override
         public void write(final int b) throws IOException {
             out.write(b);
@@ -523,7 +1453,9 @@ public class LocalFileHandler extends Handler {
 
         @Override
         public void flush() throws IOException {
-            out.flush();
+            if (!deferFlush) {
+                out.flush();
+            }
         }
 
         @Override
@@ -531,4 +1463,17 @@ public class LocalFileHandler extends Handler {
             out.close();
         }
     }
+
+    // a single daemon thread for all the handlers, it only does a sync flush of idle compressed files
+    private static final class SyncFlusher {
+        private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(task -> {
+            final var thread = new Thread(task, LocalFileHandler.class.getName() + "-sync-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private SyncFlusher() {
+            // no-op
+        }
+    }
 }
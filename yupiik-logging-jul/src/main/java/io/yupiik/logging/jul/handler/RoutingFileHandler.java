@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.handler;
+
+import io.yupiik.logging.jul.api.RecordFreezer;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+import static java.util.function.Function.identity;
+
+/**
+ * Routes records to one {@link LocalFileHandler} per key (logger prefix, tenant from the custom context, ...).
+ * <p>
+ * {@code {key}} is replaced by the (sanitized) key in the file handler configuration (read with
+ * {@code io.yupiik.logging.jul.handler.RoutingFileHandler.} prefix instead of the {@link LocalFileHandler} one)
+ * so each key gets its own files. At most {@code maxOpenFiles} files are kept open, the least recently used one
+ * is released and reopened (appending to the same file) on its next record.
+ * Archiving and purge are done for all keys in a single pass every {@code evictionInterval}, the same pass drops
+ * the handlers of the keys without any record since {@code idleTimeout} so the handler count stays bounded too.
+ */
+public class RoutingFileHandler extends Handler {
+    private static final String LOCAL_PREFIX = LocalFileHandler.class.getName();
+    private static final String JSON_FORMATTER = "io.yupiik.logging.jul.formatter.JsonFormatter"; // frozen custom entries
+
+    private final Clock clock;
+    private final String prefix = RoutingFileHandler.class.getName();
+    private final Function<LogRecord, String> keyExtractor;
+    private final String defaultKey;
+    private final int maxOpenFiles;
+    private final long evictionInterval;
+    private final long idleTimeout;
+
+    private final ConcurrentMap<String, Route> handlers = new ConcurrentHashMap<>();
+    private final Map<String, LocalFileHandler> opened = new LinkedHashMap<>(16, .75f, true); // LRU, guarded by itself
+    private final Lock evictionLock = new ReentrantLock();
+    private volatile long lastEviction;
+    private volatile boolean closed;
+
+    public RoutingFileHandler() {
+        this(Clock.systemDefaultZone());
+    }
+
+    public RoutingFileHandler(final Clock clock) {
+        this.clock = clock;
+
+        final var filenamePattern = getProperty(prefix + ".filenamePattern", identity(), () -> "${application.base}/logs/{key}/logs.%s.%03d.log");
+        if (!filenamePattern.contains("{key}")) {
+            throw new IllegalArgumentException("filenamePattern must contain {key}, got '" + filenamePattern + "'");
+        }
+        defaultKey = getProperty(prefix + ".defaultKey", identity(), () -> "default");
+        maxOpenFiles = getProperty(prefix + ".maxOpenFiles", Integer::parseInt, () -> 128);
+        if (maxOpenFiles <= 0) {
+            throw new IllegalArgumentException("maxOpenFiles must be positive, got " + maxOpenFiles);
+        }
+        evictionInterval = getProperty(prefix + ".evictionInterval", v -> Duration.parse(v).toMillis(), () -> 60_000L);
+        idleTimeout = getProperty(prefix + ".idleTimeout", v -> Duration.parse(v).toMillis(), () -> 300_000L);
+        keyExtractor = createKeyExtractor(getProperty(prefix + ".key", identity(), () -> "logger"));
+        lastEviction = clock.millis();
+    }
+
+    @Override
+    public void publish(final LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+
+        final long now = clock.millis();
+        final var key = sanitize(keyExtractor.apply(record));
+        var route = findRoute(key, now);
+        while (!route.acquire(now)) { // dropped concurrently because idle, the next lookup creates a new one
+            route = findRoute(key, now);
+        }
+        try {
+            publish(key, route.handler, record);
+        } finally {
+            route.users.decrementAndGet();
+        }
+
+        final long interval = evictionInterval >= 0 ? evictionInterval : idleTimeout;
+        if (interval >= 0 && now - lastEviction >= interval && evictionLock.tryLock()) {
+            try {
+                lastEviction = now;
+                if (evictionInterval >= 0) {
+                    handlers.values().forEach(it -> it.handler.runEviction());
+                }
+                if (idleTimeout >= 0) {
+                    dropIdleRoutes(now);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    // the handler is created outside of the map lock (file lookups), the loser of a concurrent creation is closed
+    private Route findRoute(final String key, final long now) {
+        final var existing = handlers.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final var created = newRoute(key, now);
+        final var previous = handlers.putIfAbsent(key, created);
+        if (previous == null) {
+            return created;
+        }
+        created.handler.close(); // never opened
+        return previous;
+    }
+
+    private void publish(final String key, final LocalFileHandler handler, final LogRecord record) {
+        final int opens = handler.openCount();
+        track(key, handler);
+        handler.publish(record);
+        if (opens != handler.openCount()) { // (re)opened, maybe after a concurrent release, so ensure it is tracked
+            track(key, handler);
+        }
+    }
+
+    private void track(final String key, final LocalFileHandler handler) {
+        LocalFileHandler released = null;
+        synchronized (opened) {
+            if (opened.get(key) == null) {
+                opened.put(key, handler);
+                if (opened.size() > maxOpenFiles) {
+                    final var eldest = opened.entrySet().iterator();
+                    released = eldest.next().getValue();
+                    eldest.remove();
+                }
+            }
+        }
+        if (released != null) {
+            released.suspend();
+        }
+    }
+
+    private void dropIdleRoutes(final long now) {
+        for (final var entry : handlers.entrySet()) {
+            final var route = entry.getValue();
+            if (now - route.lastUse < idleTimeout || !route.users.compareAndSet(0, -1)) { // -1: no more usable
+                continue;
+            }
+            synchronized (opened) {
+                opened.remove(entry.getKey(), route.handler);
+            }
+            handlers.remove(entry.getKey(), route);
+            route.handler.close();
+            if (evictionInterval >= 0) { // it is no more part of the periodic pass
+                route.handler.runEviction();
+            }
+        }
+    }
+
+    int handlerCount() {
+        return handlers.size();
+    }
+
+    int openFileCount() {
+        return (int) handlers.values().stream().filter(it -> it.handler.isOpen()).count();
+    }
+
+    @Override
+    public void flush() {
+        final List<LocalFileHandler> toFlush;
+        synchronized (opened) {
+            toFlush = new ArrayList<>(opened.values());
+        }
+        toFlush.stream().filter(LocalFileHandler::isOpen).forEach(LocalFileHandler::flush);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (opened) {
+            opened.clear();
+        }
+        handlers.values().forEach(it -> it.handler.close());
+        handlers.clear();
+    }
+
+    protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+        final var value = LogManager.getLogManager().getProperty(name);
+        if (value == null) {
+            return defaultValue.get();
+        }
+        return mapper.apply(value);
+    }
+
+    private Route newRoute(final String key, final long now) {
+        final var handler = newHandler(key);
+        handler.resumeLastFile(); // the key can have been dropped because idle
+        return new Route(handler, now);
+    }
+
+    private LocalFileHandler newHandler(final String key) {
+        final var handler = new LocalFileHandler(clock) {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final var suffix = name.startsWith(LOCAL_PREFIX) ? name.substring(LOCAL_PREFIX.length()) : null;
+                if (suffix == null) {
+                    return defaultValue.get();
+                }
+                final var value = RoutingFileHandler.this.getProperty(prefix + suffix, identity(), () -> defaultValue(suffix));
+                return value == null ? defaultValue.get() : mapper.apply(value.replace("{key}", key));
+            }
+        };
+        handler.setEvictOnOpen(false);
+        handler.setFormatter(getFormatter());
+        handler.setErrorManager(getErrorManager());
+        try {
+            handler.setEncoding(getEncoding());
+        } catch (final UnsupportedEncodingException e) {
+            reportError(e.getMessage(), e, ErrorManager.OPEN_FAILURE);
+        }
+        return handler;
+    }
+
+    private String defaultValue(final String suffix) {
+        switch (suffix) {
+            case ".filenamePattern":
+                return "${application.base}/logs/{key}/logs.%s.%03d.log";
+            case ".archiveDirectory":
+                return "${application.base}/logs/{key}/archives/";
+            default:
+                return null;
+        }
+    }
+
+    // keys become path segments so only keep a safe subset of characters
+    private String sanitize(final String key) {
+        if (key == null || key.isBlank()) {
+            return defaultKey;
+        }
+        final var out = new StringBuilder(Math.min(key.length(), 128));
+        for (int i = 0; i < key.length() && out.length() < 128; i++) {
+            final char c = key.charAt(i);
+            out.append(Character.isLetterOrDigit(c) && c < 128 || c == '-' || c == '_' || c == '.' ? c : '_');
+        }
+        if (out.charAt(0) == '.') { // no hidden file nor ".."
+            out.setCharAt(0, '_');
+        }
+        return out.toString();
+    }
+
+    private Function<LogRecord, String> createKeyExtractor(final String key) {
+        if ("logger".equals(key)) {
+            return LogRecord::getLoggerName;
+        }
+        if ("loggerPrefix".equals(key)) {
+            final int depth = getProperty(prefix + ".loggerPrefixDepth", Integer::parseInt, () -> 1);
+            return record -> {
+                final var name = record.getLoggerName();
+                if (name == null) {
+                    return null;
+                }
+                int end = -1;
+                for (int i = 0; i < depth; i++) {
+                    end = name.indexOf('.', end + 1);
+                    if (end < 0) {
+                        return name;
+                    }
+                }
+                return name.substring(0, end);
+            };
+        }
+        if (key.startsWith("context:")) {
+            final var entry = key.substring("context:".length());
+            final var mapper = createCustomEntriesMapper();
+            return record -> {
+                final var value = findContext(record, mapper).get(entry);
+                if (value != null && value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) { // JSON values
+                    return value.substring(1, value.length() - 1);
+                }
+                return value;
+            };
+        }
+        throw new IllegalArgumentException("Unknown routing key '" + key + "', supported: logger, loggerPrefix, context:<name>");
+    }
+
+    // in async mode the context is frozen in the record by the JSON formatter so reuse it
+    @SuppressWarnings("unchecked")
+    private Map<String, String> findContext(final LogRecord record, final Function<LogRecord, Map<String, String>> mapper) {
+        final var frozen = RecordFreezer.attachment(record, JSON_FORMATTER, Map.class);
+        if (frozen != null) {
+            return (Map<String, String>) frozen;
+        }
+        if (mapper == null) {
+            return Map.of();
+        }
+        final var data = mapper.apply(record);
+        return data == null ? Map.of() : data;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<LogRecord, Map<String, String>> createCustomEntriesMapper() {
+        final var mapper = getProperty(prefix + ".customEntriesMapper", identity(), () -> null);
+        if (mapper == null) {
+            return null;
+        }
+        try {
+            return (Function<LogRecord, Map<String, String>>) Thread.currentThread().getContextClassLoader()
+                    .loadClass(mapper.trim())
+                    .getConstructor()
+                    .newInstance();
+        } catch (final InstantiationException | IllegalAccessException | InvocationTargetException |
+                       NoSuchMethodException | ClassNotFoundException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static class Route {
+        private final LocalFileHandler handler;
+        private final AtomicInteger users = new AtomicInteger(); // -1 when dropped
+        private volatile long lastUse;
+
+        private Route(final LocalFileHandler handler, final long now) {
+            this.handler = handler;
+            this.lastUse = now;
+        }
+
+        private boolean acquire(final long now) {
+            int current;
+            do {
+                current = users.get();
+                if (current < 0) {
+                    return false;
+                }
+            } while (!users.compareAndSet(current, current + 1));
+            lastUse = now;
+            return true;
+        }
+    }
+}
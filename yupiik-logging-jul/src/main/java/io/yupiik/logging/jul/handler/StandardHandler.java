@@ -15,6 +15,8 @@
  */
 package io.yupiik.logging.jul.handler;
 
+import io.yupiik.logging.jul.api.BytesFormatter;
+
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.util.logging.Handler;
@@ -45,7 +47,18 @@ public class StandardHandler extends Handler {
 
     private void publish(final LogRecord record, final PrintStream out) {
         try {
-            out.write(getFormatter().format(record).getBytes(StandardCharsets.UTF_8));
+            final var formatter = getFormatter();
+            if (formatter instanceof BytesFormatter) { // no intermediate string
+                final var buffer = Utf8Buffers.acquire();
+                try {
+                    ((BytesFormatter) formatter).formatTo(record, buffer);
+                    out.write(buffer.array(), 0, buffer.size());
+                } finally {
+                    buffer.reset();
+                }
+            } else {
+                out.write(formatter.format(record).getBytes(StandardCharsets.UTF_8));
+            }
         } catch (final Exception ex) {
             ex.printStackTrace(System.err);
         }
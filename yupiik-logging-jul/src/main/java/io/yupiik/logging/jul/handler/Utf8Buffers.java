@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.handler;
+
+import io.yupiik.logging.jul.api.Utf8Buffer;
+
+// per thread formatting buffers, callers must reset the buffer once the bytes are written
+final class Utf8Buffers {
+    private static final ThreadLocal<Utf8Buffer> BUFFER = ThreadLocal.withInitial(Utf8Buffer::new);
+
+    private Utf8Buffers() {
+        // no-op
+    }
+
+    static Utf8Buffer acquire() {
+        final var buffer = BUFFER.get();
+        // a non empty buffer means we are logging while formatting a record (toString() of a parameter)
+        return buffer.size() > 0 ? new Utf8Buffer() : buffer;
+    }
+}
@@ -17,6 +17,9 @@ package io.yupiik.logging.jul.logger;
 
 import io.yupiik.logging.jul.YupiikLoggerFactory;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.function.Supplier;
 import java.util.logging.Level;
@@ -39,9 +42,18 @@ public class YupiikLogger extends Logger {
         }
     }
 
+    private static final int OFF = Level.OFF.intValue();
+    private static final int UNKNOWN_LEVEL = Integer.MIN_VALUE; // parent is not a yupiik logger so we can't track its level
+    private static final Object TREE_LOCK = new Object();
+
     private volatile Logger delegate;
     private final ResourceBundle bundle;
 
+    // effective level as JUL computes it (it is private there), kept up to date on level and parent changes
+    // so a disabled log statement is a single field compare
+    private volatile int levelValue = Level.INFO.intValue();
+    private List<WeakReference<YupiikLogger>> children; // guarded by TREE_LOCK
+
     public YupiikLogger(final String name, final String resourceBundleName, final ResourceBundle bundle) {
         super(name, bundle == null ? resourceBundleName : null);
         this.bundle = bundle == null ? super.getResourceBundle() : bundle;
@@ -52,19 +64,74 @@ public class YupiikLogger extends Logger {
         return bundle;
     }
 
+    // outside of native images it is always this logger so the hot path only reads levelValue
     private Logger getDelegate() {
-        if (delegate == null) {
-            synchronized (this) {
-                if (delegate == null) {
-                    if (GRAAL) {
-                        delegate = YupiikLoggerFactory.get().getLogger(super.getName(), super.getResourceBundleName());
-                    } else {
-                        delegate = this;
-                    }
+        if (!GRAAL) {
+            return this;
+        }
+        final var current = delegate;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (delegate == null) {
+                delegate = YupiikLoggerFactory.get().getLogger(super.getName(), super.getResourceBundleName());
+            }
+            return delegate;
+        }
+    }
+
+    @Override
+    public void setLevel(final Level newLevel) throws SecurityException {
+        synchronized (TREE_LOCK) {
+            super.setLevel(newLevel);
+            updateLevelValue();
+        }
+    }
+
+    @Override
+    public void setParent(final Logger parent) {
+        synchronized (TREE_LOCK) {
+            final var previous = getParent(); // no dedicated field, it keeps each logger small
+            if (previous instanceof YupiikLogger) {
+                final var previousLogger = (YupiikLogger) previous;
+                if (previousLogger.children != null) {
+                    previousLogger.children.removeIf(it -> it.get() == null || it.get() == this);
+                }
+            }
+            super.setParent(parent);
+            if (parent instanceof YupiikLogger) {
+                final var parentLogger = (YupiikLogger) parent;
+                if (parentLogger.children == null) {
+                    parentLogger.children = new ArrayList<>(2);
+                }
+                parentLogger.children.add(new WeakReference<>(this));
+            }
+            updateLevelValue();
+        }
+    }
+
+    private void updateLevelValue() {
+        final var level = getLevel();
+        if (level != null) {
+            levelValue = level.intValue();
+        } else {
+            final var parent = getParent();
+            if (parent == null) {
+                levelValue = Level.INFO.intValue();
+            } else {
+                levelValue = parent instanceof YupiikLogger ? ((YupiikLogger) parent).levelValue : UNKNOWN_LEVEL;
+            }
+        }
+        if (children != null) {
+            children.removeIf(it -> it.get() == null);
+            for (final var child : children) {
+                final var logger = child.get();
+                if (logger != null) {
+                    logger.updateLevelValue();
                 }
             }
         }
-        return delegate;
     }
 
     @Override
@@ -75,423 +142,514 @@ public class YupiikLogger extends Logger {
     @Override
     public void log(final LogRecord record) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.log(record);
+        if (delegate != this) {
+            delegate.log(record);
             return;
         }
-        delegate.log(record);
+        if (isEnabled(record.getLevel())) {
+            super.log(record);
+        }
     }
 
     @Override
     public void log(final Level level, final String msg) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.log(level, msg);
+        if (delegate != this) {
+            delegate.log(level, msg);
             return;
         }
-        delegate.log(level, msg);
+        if (isEnabled(level)) {
+            super.log(level, msg);
+        }
     }
 
     @Override
     public void log(final Level level, final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.log(level, msgSupplier);
+        if (delegate != this) {
+            delegate.log(level, msgSupplier);
             return;
         }
-        delegate.log(level, msgSupplier);
+        if (isEnabled(level)) {
+            super.log(level, msgSupplier);
+        }
     }
 
     @Override
     public void log(final Level level, final String msg, final Object param1) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.log(level, msg, param1);
+        if (delegate != this) {
+            delegate.log(level, msg, param1);
             return;
         }
-        delegate.log(level, msg, param1);
+        if (isEnabled(level)) {
+            super.log(level, msg, param1);
+        }
     }
 
     @Override
     public void log(final Level level, final String msg, final Object[] params) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.log(level, msg, params);
+        if (delegate != this) {
+            delegate.log(level, msg, params);
             return;
         }
-        delegate.log(level, msg, params);
+        if (isEnabled(level)) {
+            super.log(level, msg, params);
+        }
     }
 
     @Override
     public void log(final Level level, final String msg, final Throwable thrown) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.log(level, msg, thrown);
+        if (delegate != this) {
+            delegate.log(level, msg, thrown);
             return;
         }
-        delegate.log(level, msg, thrown);
+        if (isEnabled(level)) {
+            super.log(level, msg, thrown);
+        }
     }
 
     @Override
     public void log(final Level level, final Throwable thrown, final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.log(level, thrown, msgSupplier);
+        if (delegate != this) {
+            delegate.log(level, thrown, msgSupplier);
             return;
         }
-        delegate.log(level, thrown, msgSupplier);
+        if (isEnabled(level)) {
+            super.log(level, thrown, msgSupplier);
+        }
     }
 
     @Override
     public void logp(final Level level, final String sourceClass, final String sourceMethod, final String msg) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logp(level, sourceClass, sourceMethod, msg);
+        if (delegate != this) {
+            delegate.logp(level, sourceClass, sourceMethod, msg);
             return;
         }
-        delegate.logp(level, sourceClass, sourceMethod, msg);
+        if (isEnabled(level)) {
+            super.logp(level, sourceClass, sourceMethod, msg);
+        }
     }
 
     @Override
     public void logp(final Level level, final String sourceClass, final String sourceMethod, final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logp(level, sourceClass, sourceMethod, msgSupplier);
+        if (delegate != this) {
+            delegate.logp(level, sourceClass, sourceMethod, msgSupplier);
             return;
         }
-        delegate.logp(level, sourceClass, sourceMethod, msgSupplier);
+        if (isEnabled(level)) {
+            super.logp(level, sourceClass, sourceMethod, msgSupplier);
+        }
     }
 
     @Override
     public void logp(final Level level, final String sourceClass, final String sourceMethod, final String msg, final Object param1) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logp(level, sourceClass, sourceMethod, msg, param1);
+        if (delegate != this) {
+            delegate.logp(level, sourceClass, sourceMethod, msg, param1);
             return;
         }
-        delegate.logp(level, sourceClass, sourceMethod, msg, param1);
+        if (isEnabled(level)) {
+            super.logp(level, sourceClass, sourceMethod, msg, param1);
+        }
     }
 
     @Override
     public void logp(final Level level, final String sourceClass, final String sourceMethod, final String msg, final Object[] params) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logp(level, sourceClass, sourceMethod, msg, params);
+        if (delegate != this) {
+            delegate.logp(level, sourceClass, sourceMethod, msg, params);
             return;
         }
-        delegate.logp(level, sourceClass, sourceMethod, msg, params);
+        if (isEnabled(level)) {
+            super.logp(level, sourceClass, sourceMethod, msg, params);
+        }
     }
 
     @Override
     public void logp(final Level level, final String sourceClass, final String sourceMethod, final String msg, final Throwable thrown) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logp(level, sourceClass, sourceMethod, msg, thrown);
+        if (delegate != this) {
+            delegate.logp(level, sourceClass, sourceMethod, msg, thrown);
             return;
         }
-        delegate.logp(level, sourceClass, sourceMethod, msg, thrown);
+        if (isEnabled(level)) {
+            super.logp(level, sourceClass, sourceMethod, msg, thrown);
+        }
     }
 
     @Override
     public void logp(final Level level, final String sourceClass, final String sourceMethod, final Throwable thrown, final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logp(level, sourceClass, sourceMethod, thrown, msgSupplier);
+        if (delegate != this) {
+            delegate.logp(level, sourceClass, sourceMethod, thrown, msgSupplier);
             return;
         }
-        delegate.logp(level, sourceClass, sourceMethod, thrown, msgSupplier);
+        if (isEnabled(level)) {
+            super.logp(level, sourceClass, sourceMethod, thrown, msgSupplier);
+        }
     }
 
     @Override
     @Deprecated
     public void logrb(final Level level, final String sourceClass, final String sourceMethod, final String bundleName, final String msg) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logrb(level, sourceClass, sourceMethod, bundleName, msg);
+        if (delegate != this) {
+            delegate.logrb(level, sourceClass, sourceMethod, bundleName, msg);
             return;
         }
-        delegate.logrb(level, sourceClass, sourceMethod, bundleName, msg);
+        if (isEnabled(level)) {
+            super.logrb(level, sourceClass, sourceMethod, bundleName, msg);
+        }
     }
 
     @Override
     @Deprecated
     public void logrb(final Level level, final String sourceClass, final String sourceMethod, final String bundleName, final String msg, final Object param1) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logrb(level, sourceClass, sourceMethod, bundleName, msg, param1);
+        if (delegate != this) {
+            delegate.logrb(level, sourceClass, sourceMethod, bundleName, msg, param1);
             return;
         }
-        delegate.logrb(level, sourceClass, sourceMethod, bundleName, msg, param1);
+        if (isEnabled(level)) {
+            super.logrb(level, sourceClass, sourceMethod, bundleName, msg, param1);
+        }
     }
 
     @Override
     @Deprecated
     public void logrb(final Level level, final String sourceClass, final String sourceMethod, final String bundleName, final String msg, final Object[] params) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logrb(level, sourceClass, sourceMethod, bundleName, msg, params);
+        if (delegate != this) {
+            delegate.logrb(level, sourceClass, sourceMethod, bundleName, msg, params);
             return;
         }
-        delegate.logrb(level, sourceClass, sourceMethod, bundleName, msg, params);
+        if (isEnabled(level)) {
+            super.logrb(level, sourceClass, sourceMethod, bundleName, msg, params);
+        }
     }
 
     @Override
     public void logrb(final Level level, final String sourceClass, final String sourceMethod, ResourceBundle bundle, final String msg, final Object... params) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logrb(level, sourceClass, sourceMethod, bundle, msg, params);
+        if (delegate != this) {
+            delegate.logrb(level, sourceClass, sourceMethod, bundle, msg, params);
             return;
         }
-        delegate.logrb(level, sourceClass, sourceMethod, bundle, msg, params);
+        if (isEnabled(level)) {
+            super.logrb(level, sourceClass, sourceMethod, bundle, msg, params);
+        }
     }
 
     @Override
     public void logrb(final Level level, ResourceBundle bundle, final String msg, final Object... params) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logrb(level, bundle, msg, params);
+        if (delegate != this) {
+            delegate.logrb(level, bundle, msg, params);
             return;
         }
-        delegate.logrb(level, bundle, msg, params);
+        if (isEnabled(level)) {
+            super.logrb(level, bundle, msg, params);
+        }
     }
 
     @Override
     @Deprecated
     public void logrb(final Level level, final String sourceClass, final String sourceMethod, final String bundleName, final String msg, final Throwable thrown) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logrb(level, sourceClass, sourceMethod, bundleName, msg, thrown);
+        if (delegate != this) {
+            delegate.logrb(level, sourceClass, sourceMethod, bundleName, msg, thrown);
             return;
         }
-        delegate.logrb(level, sourceClass, sourceMethod, bundleName, msg, thrown);
+        if (isEnabled(level)) {
+            super.logrb(level, sourceClass, sourceMethod, bundleName, msg, thrown);
+        }
     }
 
     @Override
     public void logrb(final Level level, final String sourceClass, final String sourceMethod, ResourceBundle bundle, final String msg, final Throwable thrown) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logrb(level, sourceClass, sourceMethod, bundle, msg, thrown);
+        if (delegate != this) {
+            delegate.logrb(level, sourceClass, sourceMethod, bundle, msg, thrown);
             return;
         }
-        delegate.logrb(level, sourceClass, sourceMethod, bundle, msg, thrown);
+        if (isEnabled(level)) {
+            super.logrb(level, sourceClass, sourceMethod, bundle, msg, thrown);
+        }
     }
 
     @Override
     public void logrb(final Level level, ResourceBundle bundle, final String msg, final Throwable thrown) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.logrb(level, bundle, msg, thrown);
+        if (delegate != this) {
+            delegate.logrb(level, bundle, msg, thrown);
             return;
         }
-        delegate.logrb(level, bundle, msg, thrown);
+        if (isEnabled(level)) {
+            super.logrb(level, bundle, msg, thrown);
+        }
     }
 
     @Override
     public void entering(final String sourceClass, final String sourceMethod) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.entering(sourceClass, sourceMethod);
+        if (delegate != this) {
+            delegate.entering(sourceClass, sourceMethod);
             return;
         }
-        delegate.entering(sourceClass, sourceMethod);
+        if (isEnabled(Level.FINER)) {
+            super.entering(sourceClass, sourceMethod);
+        }
     }
 
     @Override
     public void entering(final String sourceClass, final String sourceMethod, final Object param1) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.entering(sourceClass, sourceMethod, param1);
+        if (delegate != this) {
+            delegate.entering(sourceClass, sourceMethod, param1);
             return;
         }
-        delegate.entering(sourceClass, sourceMethod, param1);
+        if (isEnabled(Level.FINER)) {
+            super.entering(sourceClass, sourceMethod, param1);
+        }
     }
 
     @Override
     public void entering(final String sourceClass, final String sourceMethod, final Object[] params) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.entering(sourceClass, sourceMethod, params);
+        if (delegate != this) {
+            delegate.entering(sourceClass, sourceMethod, params);
             return;
         }
-        delegate.entering(sourceClass, sourceMethod, params);
+        if (isEnabled(Level.FINER)) {
+            super.entering(sourceClass, sourceMethod, params);
+        }
     }
 
     @Override
     public void exiting(final String sourceClass, final String sourceMethod) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.exiting(sourceClass, sourceMethod);
+        if (delegate != this) {
+            delegate.exiting(sourceClass, sourceMethod);
             return;
         }
-        delegate.exiting(sourceClass, sourceMethod);
+        if (isEnabled(Level.FINER)) {
+            super.exiting(sourceClass, sourceMethod);
+        }
     }
 
     @Override
     public void exiting(final String sourceClass, final String sourceMethod, final Object result) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.exiting(sourceClass, sourceMethod, result);
+        if (delegate != this) {
+            delegate.exiting(sourceClass, sourceMethod, result);
             return;
         }
-        delegate.exiting(sourceClass, sourceMethod, result);
+        if (isEnabled(Level.FINER)) {
+            super.exiting(sourceClass, sourceMethod, result);
+        }
     }
 
     @Override
     public void throwing(final String sourceClass, final String sourceMethod, final Throwable thrown) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.throwing(sourceClass, sourceMethod, thrown);
+        if (delegate != this) {
+            delegate.throwing(sourceClass, sourceMethod, thrown);
             return;
         }
-        delegate.throwing(sourceClass, sourceMethod, thrown);
+        if (isEnabled(Level.FINER)) {
+            super.throwing(sourceClass, sourceMethod, thrown);
+        }
     }
 
     @Override
     public void severe(final String msg) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.severe(msg);
+        if (delegate != this) {
+            delegate.severe(msg);
             return;
         }
-        delegate.severe(msg);
+        if (isEnabled(Level.SEVERE)) {
+            super.severe(msg);
+        }
     }
 
     @Override
     public void warning(final String msg) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.warning(msg);
+        if (delegate != this) {
+            delegate.warning(msg);
             return;
         }
-        delegate.warning(msg);
+        if (isEnabled(Level.WARNING)) {
+            super.warning(msg);
+        }
     }
 
     @Override
     public void info(final String msg) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.info(msg);
+        if (delegate != this) {
+            delegate.info(msg);
             return;
         }
-        delegate.info(msg);
+        if (isEnabled(Level.INFO)) {
+            super.info(msg);
+        }
     }
 
     @Override
     public void config(final String msg) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.config(msg);
+        if (delegate != this) {
+            delegate.config(msg);
             return;
         }
-        delegate.config(msg);
+        if (isEnabled(Level.CONFIG)) {
+            super.config(msg);
+        }
     }
 
     @Override
     public void fine(final String msg) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.fine(msg);
+        if (delegate != this) {
+            delegate.fine(msg);
             return;
         }
-        delegate.fine(msg);
+        if (isEnabled(Level.FINE)) {
+            super.fine(msg);
+        }
     }
 
     @Override
     public void finer(final String msg) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.finer(msg);
+        if (delegate != this) {
+            delegate.finer(msg);
             return;
         }
-        delegate.finer(msg);
+        if (isEnabled(Level.FINER)) {
+            super.finer(msg);
+        }
     }
 
     @Override
     public void finest(final String msg) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.finest(msg);
+        if (delegate != this) {
+            delegate.finest(msg);
             return;
         }
-        delegate.finest(msg);
+        if (isEnabled(Level.FINEST)) {
+            super.finest(msg);
+        }
     }
 
     @Override
     public void severe(final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.severe(msgSupplier);
+        if (delegate != this) {
+            delegate.severe(msgSupplier);
             return;
         }
-        delegate.severe(msgSupplier);
+        if (isEnabled(Level.SEVERE)) {
+            super.severe(msgSupplier);
+        }
     }
 
     @Override
     public void warning(final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.warning(msgSupplier);
+        if (delegate != this) {
+            delegate.warning(msgSupplier);
             return;
         }
-        delegate.warning(msgSupplier);
+        if (isEnabled(Level.WARNING)) {
+            super.warning(msgSupplier);
+        }
     }
 
     @Override
     public void info(final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.info(msgSupplier);
+        if (delegate != this) {
+            delegate.info(msgSupplier);
             return;
         }
-        delegate.info(msgSupplier);
+        if (isEnabled(Level.INFO)) {
+            super.info(msgSupplier);
+        }
     }
 
     @Override
     public void config(final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.config(msgSupplier);
+        if (delegate != this) {
+            delegate.config(msgSupplier);
             return;
         }
-        delegate.config(msgSupplier);
+        if (isEnabled(Level.CONFIG)) {
+            super.config(msgSupplier);
+        }
     }
 
     @Override
     public void fine(final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.fine(msgSupplier);
+        if (delegate != this) {
+            delegate.fine(msgSupplier);
             return;
         }
-        delegate.fine(msgSupplier);
+        if (isEnabled(Level.FINE)) {
+            super.fine(msgSupplier);
+        }
     }
 
     @Override
     public void finer(final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.finer(msgSupplier);
+        if (delegate != this) {
+            delegate.finer(msgSupplier);
             return;
         }
-        delegate.finer(msgSupplier);
+        if (isEnabled(Level.FINER)) {
+            super.finer(msgSupplier);
+        }
     }
 
     @Override
     public void finest(final Supplier<String> msgSupplier) {
         final var delegate = getDelegate();
-        if (delegate == this) {
-            super.finest(msgSupplier);
+        if (delegate != this) {
+            delegate.finest(msgSupplier);
             return;
         }
-        delegate.finest(msgSupplier);
+        if (isEnabled(Level.FINEST)) {
+            super.finest(msgSupplier);
+        }
     }
 
     @Override
     public boolean isLoggable(final Level level) {
         final var delegate = getDelegate();
-        if (delegate == this) {
+        if (delegate != this) {
+            return delegate.isLoggable(level);
+        }
+        return isEnabled(level);
+    }
+
+    // the delegate checks the level itself so log methods only call it for this logger
+    private boolean isEnabled(final Level level) {
+        final int value = levelValue;
+        if (value == UNKNOWN_LEVEL) {
             return super.isLoggable(level);
         }
-        return delegate.isLoggable(level);
+        return level.intValue() >= value && value != OFF;
     }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Bloom filter over some JSON fields of a log file, it is stored next to the archive it indexes
+ * ({@code <archive>.bloom}) and enables to skip archives which can't contain a value (a trace or request id for example).
+ * <p>
+ * Format: {@code YLB1} magic, the indexed field names, the number of hash functions then the bitset.
+ */
+public final class BloomIndex {
+    public static final String EXTENSION = ".bloom";
+
+    private static final int MAGIC = ('Y' << 24) | ('L' << 16) | ('B' << 8) | '1';
+
+    private final List<String> fields;
+    private final int hashes;
+    private final long[] bits;
+
+    private BloomIndex(final List<String> fields, final int hashes, final long[] bits) {
+        this.fields = fields;
+        this.hashes = hashes;
+        this.bits = bits;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public boolean isIndexed(final String field) {
+        return fields.contains(field);
+    }
+
+    /**
+     * @param field the JSON field.
+     * @param value the (unescaped) value.
+     * @return {@code false} if the indexed file does not contain this value for this field, {@code true} if it may contain it.
+     */
+    public boolean mightContain(final String field, final String value) {
+        final long hash = hash(field, value);
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        final long size = bits.length * 64L;
+        for (int i = 1; i <= hashes; i++) {
+            final long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static Path indexOf(final Path archive) {
+        return archive.resolveSibling(archive.getFileName() + EXTENSION);
+    }
+
+    public static BloomIndex read(final Path index) throws IOException {
+        try (final var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Invalid bloom index '" + index + "'");
+            }
+            final var fields = new String[in.readInt()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = in.readUTF();
+            }
+            final int hashes = in.readInt();
+            final var bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            return new BloomIndex(List.of(fields), hashes, bits);
+        }
+    }
+
+    /**
+     * Indexes the fields of a JSON log file (one object per line as written by {@code JsonFormatter}),
+     * the filter is sized from the number of distinct values.
+     *
+     * @param lines             the log file content.
+     * @param encoding          the log file encoding.
+     * @param fields            the JSON fields to index.
+     * @param falsePositiveRate the expected false positive probability (between 0 and 1 exclusive).
+     * @param target            where to write the index.
+     * @throws IOException if the source can't be read or the index written.
+     */
+    public static void write(final InputStream lines, final Charset encoding, final Collection<String> fields,
+                             final double falsePositiveRate, final Path target) throws IOException {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid false positive rate: " + falsePositiveRate);
+        }
+
+        // only keep hashes to size the filter, it is way lighter than the values
+        long[] hashes = new long[1024];
+        int count = 0;
+        try (final var reader = new BufferedReader(new InputStreamReader(lines, encoding))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final var parsed = JsonLine.parse(line);
+                if (parsed == null) {
+                    continue;
+                }
+                for (final var field : fields) {
+                    final var value = parsed.get(field);
+                    if (value == null) {
+                        continue;
+                    }
+                    if (count == hashes.length) {
+                        hashes = Arrays.copyOf(hashes, count * 2);
+                    }
+                    hashes[count++] = hash(field, JsonLine.unquote(value));
+                }
+            }
+        }
+        Arrays.sort(hashes, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || hashes[i] != hashes[i - 1]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+
+        final double ln2 = Math.log(2);
+        final long size = Math.max(64, (long) Math.ceil(-Math.max(1, distinct) * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        final var bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (size + 63) / 64)];
+        final int hashCount = (int) Math.max(1, Math.min(30, Math.round((double) bits.length * 64 / Math.max(1, distinct) * ln2)));
+        final var index = new BloomIndex(List.copyOf(fields), hashCount, bits);
+        for (int i = 0; i < distinct; i++) {
+            index.add(hashes[i]);
+        }
+
+        final var tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (final var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(index.fields.size());
+            for (final var field : index.fields) {
+                out.writeUTF(field);
+            }
+            out.writeInt(hashCount);
+            out.writeInt(bits.length);
+            for (final long value : bits) {
+                out.writeLong(value);
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void add(final long hash) {
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        final long size = bits.length * 64L;
+        for (int i = 1; i <= hashes; i++) {
+            final long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    // FNV-1a over "field\0value" then murmur3 finalizer to spread the bits used by double hashing
+    private static long hash(final String field, final String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (final byte b : field.getBytes(UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        hash *= 0x100000001b3L;
+        for (final byte b : value.getBytes(UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
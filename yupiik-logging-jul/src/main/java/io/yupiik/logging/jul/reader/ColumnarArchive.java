@@ -0,0 +1,635 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.ZoneOffset.UTC;
+
+/**
+ * Columnar archive format for JSON log files (one JSON object per line as written by {@code JsonFormatter}).
+ *
+ * Lines are grouped in deflated blocks, each block stores the distinct key sequences (shapes) of its lines once
+ * and the values per key (column). Repeated values (level, logger, class, method, ...) are dictionary encoded and
+ * the {@code timestamp} column is delta encoded when it matches {@code JsonFormatter} rendering.
+ * Lines which are not flat JSON objects are kept as they are so decoding is always lossless (byte to byte).
+ */
+public final class ColumnarArchive {
+    public static final String FORMAT = "columnar";
+
+    private static final byte[] MAGIC = {'Y', 'L', 'C', '1'};
+    private static final int BLOCK_RECORDS = 4096;
+    private static final int BLOCK_BYTES = 1 << 20;
+
+    private static final byte STRING = 0;
+    private static final byte DICTIONARY = 1;
+    private static final byte TIMESTAMP = 2;
+
+    private ColumnarArchive() {
+        // no-op
+    }
+
+    /**
+     * Transcodes a NDJSON stream to the columnar format.
+     *
+     * @param ndjson the source.
+     * @param out    where to write the columnar data, it is not closed.
+     * @param level  deflate level.
+     * @throws IOException if the stream can't be read or written.
+     */
+    public static void encode(final InputStream ndjson, final OutputStream out, final int level) throws IOException {
+        final var data = new DataOutputStream(out);
+        data.write(MAGIC);
+
+        // strings are handled as ISO-8859-1 to keep all bytes as they are whatever the original encoding is
+        final var lines = new LineSplitter(ndjson);
+        final var block = new BlockWriter();
+        final var deflater = new Deflater(level);
+        try {
+            String line;
+            while ((line = lines.next()) != null) {
+                block.add(line);
+                if (block.size == BLOCK_RECORDS || block.bytes >= BLOCK_BYTES) {
+                    block.writeTo(data, deflater);
+                }
+            }
+            if (block.size > 0) {
+                block.writeTo(data, deflater);
+            }
+        } finally {
+            deflater.end();
+        }
+        data.writeInt(0);
+        data.writeBoolean(lines.endsWithNewLine);
+        data.flush();
+    }
+
+    /**
+     * @param columnar the columnar data.
+     * @return a stream of the original (NDJSON) bytes, blocks are decoded lazily.
+     * @throws IOException if the header is invalid.
+     */
+    public static InputStream decode(final InputStream columnar) throws IOException {
+        return new DecodingInputStream(new BlockReader(columnar));
+    }
+
+    /**
+     * Visits the lines having a string value for a key, blocks not containing this value are skipped without
+     * rebuilding their lines.
+     *
+     * @param columnar the columnar data.
+     * @param key      the JSON key to filter on.
+     * @param value    the expected string value (only values without any escaping can match).
+     * @param consumer the line callback.
+     * @throws IOException if the data can't be read.
+     */
+    public static void scan(final InputStream columnar, final String key, final String value,
+                            final Consumer<String> consumer) throws IOException {
+        final var rawKey = new String(key.getBytes(UTF_8), ISO_8859_1);
+        final var rawValue = '"' + new String(value.getBytes(UTF_8), ISO_8859_1) + '"';
+        final var reader = new BlockReader(columnar);
+        Block block;
+        while ((block = reader.next()) != null) {
+            final var column = block.columns.get(rawKey);
+            if (column == null || !column.mayContain(rawValue)) {
+                continue;
+            }
+            block.visit(column, rawValue, line -> consumer.accept(new String(line.getBytes(ISO_8859_1), UTF_8)));
+        }
+    }
+
+    private static void writeVarLong(final DataOutputStream out, final long value) throws IOException {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (shift < 64) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+        throw new IOException("Invalid varint");
+    }
+
+    private static int readVarInt(final DataInputStream in) throws IOException {
+        final long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid size: " + value);
+        }
+        return (int) value;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        writeVarLong(out, value.length());
+        out.write(value.getBytes(ISO_8859_1));
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final var bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, ISO_8859_1);
+    }
+
+    private static String renderTimestamp(final long millis) {
+        return '"' + OffsetDateTime.ofInstant(Instant.ofEpochMilli(millis), UTC).toString() + '"';
+    }
+
+    // only JsonFormatter rendering is delta encoded since decoding must give back the exact same text
+    private static long parseTimestamp(final String value) {
+        if (value.length() < 12 || value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"') {
+            return Long.MIN_VALUE;
+        }
+        try {
+            final long millis = OffsetDateTime.parse(value.substring(1, value.length() - 1)).toInstant().toEpochMilli();
+            return millis != Long.MIN_VALUE && renderTimestamp(millis).equals(value) ? millis : Long.MIN_VALUE;
+        } catch (final DateTimeException | ArithmeticException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static class LineSplitter {
+        private final InputStream stream;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+        private int limit;
+        private boolean endsWithNewLine;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        private LineSplitter(final InputStream stream) {
+            this.stream = stream;
+        }
+
+        private String next() throws IOException {
+            line.reset();
+            while (true) {
+                if (position == limit) {
+                    limit = stream.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        if (line.size() == 0) {
+                            return null;
+                        }
+                        endsWithNewLine = false;
+                        return line.toString(ISO_8859_1);
+                    }
+                }
+                for (int i = position; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        line.write(buffer, position, i - position);
+                        position = i + 1;
+                        endsWithNewLine = true;
+                        return line.toString(ISO_8859_1);
+                    }
+                }
+                line.write(buffer, position, limit - position);
+                position = limit;
+            }
+        }
+    }
+
+    private static class BlockWriter {
+        private final Map<List<String>, Integer> shapes = new LinkedHashMap<>();
+        private final Map<String, List<String>> columns = new LinkedHashMap<>();
+        private final List<String> rawLines = new ArrayList<>();
+        private int[] shapeIds = new int[256];
+        private int size;
+        private long bytes;
+
+        private void add(final String line) {
+            final var parsed = JsonLine.parse(line);
+            final int shape;
+            if (parsed == null) {
+                shape = 0;
+                rawLines.add(line);
+            } else {
+                shape = shapes.computeIfAbsent(parsed.getKeys(), k -> shapes.size() + 1);
+                final var keys = parsed.getKeys();
+                final var values = parsed.getValues();
+                for (int i = 0; i < keys.size(); i++) {
+                    columns.computeIfAbsent(keys.get(i), k -> new ArrayList<>()).add(values.get(i));
+                }
+            }
+            if (size == shapeIds.length) {
+                shapeIds = Arrays.copyOf(shapeIds, size * 2);
+            }
+            shapeIds[size++] = shape;
+            bytes += line.length() + 1;
+        }
+
+        private void writeTo(final DataOutputStream out, final Deflater deflater) throws IOException {
+            final var payload = new ByteArrayOutputStream((int) Math.min(bytes, BLOCK_BYTES * 2L));
+            final var data = new DataOutputStream(payload);
+            writeVarLong(data, size);
+            writeVarLong(data, shapes.size());
+            for (final var shape : shapes.keySet()) {
+                writeVarLong(data, shape.size());
+                for (final var key : shape) {
+                    writeString(data, key);
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                writeVarLong(data, shapeIds[i]);
+            }
+            writeVarLong(data, rawLines.size());
+            for (final var line : rawLines) {
+                writeString(data, line);
+            }
+            writeVarLong(data, columns.size());
+            for (final var column : columns.entrySet()) {
+                writeString(data, column.getKey());
+                writeColumn(data, column.getKey(), column.getValue());
+            }
+            data.flush();
+
+            final var raw = payload.toByteArray();
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            final var compressed = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            final var chunk = new byte[8192];
+            while (!deflater.finished()) {
+                final int count = deflater.deflate(chunk);
+                compressed.write(chunk, 0, count);
+            }
+            out.writeInt(raw.length);
+            out.writeInt(compressed.size());
+            compressed.writeTo(out);
+
+            shapes.clear();
+            columns.clear();
+            rawLines.clear();
+            size = 0;
+            bytes = 0;
+        }
+
+        private void writeColumn(final DataOutputStream out, final String key, final List<String> values) throws IOException {
+            if ("timestamp".equals(key)) {
+                final var timestamps = new long[values.size()];
+                boolean typed = true;
+                for (int i = 0; i < timestamps.length; i++) {
+                    timestamps[i] = parseTimestamp(values.get(i));
+                    if (timestamps[i] == Long.MIN_VALUE) {
+                        typed = false;
+                        break;
+                    }
+                }
+                if (typed) {
+                    out.writeByte(TIMESTAMP);
+                    writeVarLong(out, timestamps.length);
+                    long previous = 0;
+                    for (final long timestamp : timestamps) {
+                        final long delta = timestamp - previous;
+                        writeVarLong(out, (delta << 1) ^ (delta >> 63)); // zigzag
+                        previous = timestamp;
+                    }
+                    return;
+                }
+            }
+
+            final var dictionary = new HashMap<String, Integer>();
+            for (final var value : values) {
+                dictionary.putIfAbsent(value, dictionary.size());
+            }
+            if (dictionary.size() * 2 <= values.size()) {
+                out.writeByte(DICTIONARY);
+                final var entries = new String[dictionary.size()];
+                dictionary.forEach((value, id) -> entries[id] = value);
+                writeVarLong(out, entries.length);
+                for (final var entry : entries) {
+                    writeString(out, entry);
+                }
+                writeVarLong(out, values.size());
+                for (final var value : values) {
+                    writeVarLong(out, dictionary.get(value));
+                }
+                return;
+            }
+
+            out.writeByte(STRING);
+            writeVarLong(out, values.size());
+            for (final var value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static class BlockReader {
+        private final DataInputStream in;
+        private final Inflater inflater = new Inflater();
+        private boolean endsWithNewLine;
+        private boolean done;
+
+        private BlockReader(final InputStream stream) throws IOException {
+            this.in = new DataInputStream(stream);
+            final var magic = new byte[MAGIC.length];
+            try {
+                in.readFully(magic);
+            } catch (final EOFException eof) {
+                throw new IOException("Not a columnar archive (too short)");
+            }
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Not a columnar archive (invalid header)");
+            }
+        }
+
+        private Block next() throws IOException {
+            if (done) {
+                return null;
+            }
+            final int rawLength = in.readInt();
+            if (rawLength == 0) {
+                endsWithNewLine = in.readBoolean();
+                done = true;
+                inflater.end();
+                return null;
+            }
+            final var compressed = new byte[in.readInt()];
+            in.readFully(compressed);
+            final var raw = new byte[rawLength];
+            inflater.reset();
+            inflater.setInput(compressed);
+            try {
+                int read = 0;
+                while (read < rawLength && !inflater.finished()) {
+                    final int count = inflater.inflate(raw, read, rawLength - read);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated block");
+                    }
+                    read += count;
+                }
+            } catch (final DataFormatException e) {
+                throw new IOException(e);
+            }
+            return new Block(new DataInputStream(new ByteArrayInputStream(raw)));
+        }
+    }
+
+    private static class Block {
+        private final int size;
+        private final Column[][] shapes;
+        private final int[] shapeIds;
+        private final String[] rawLines;
+        private final Map<String, Column> columns;
+
+        private Block(final DataInputStream in) throws IOException {
+            size = readVarInt(in);
+
+            final var shapeKeys = new String[readVarInt(in)][];
+            for (int i = 0; i < shapeKeys.length; i++) {
+                shapeKeys[i] = new String[readVarInt(in)];
+                for (int k = 0; k < shapeKeys[i].length; k++) {
+                    shapeKeys[i][k] = readString(in);
+                }
+            }
+            shapeIds = new int[size];
+            for (int i = 0; i < size; i++) {
+                shapeIds[i] = readVarInt(in);
+            }
+            rawLines = new String[readVarInt(in)];
+            for (int i = 0; i < rawLines.length; i++) {
+                rawLines[i] = readString(in);
+            }
+            final int columnCount = readVarInt(in);
+            columns = new HashMap<>(columnCount * 2);
+            for (int i = 0; i < columnCount; i++) {
+                final var key = readString(in);
+                columns.put(key, new Column(key, in));
+            }
+
+            shapes = new Column[shapeKeys.length][];
+            for (int i = 0; i < shapeKeys.length; i++) {
+                shapes[i] = new Column[shapeKeys[i].length];
+                for (int k = 0; k < shapeKeys[i].length; k++) {
+                    shapes[i][k] = columns.get(shapeKeys[i][k]);
+                    if (shapes[i][k] == null) {
+                        throw new IOException("Missing column '" + shapeKeys[i][k] + "'");
+                    }
+                }
+            }
+        }
+
+        // filter can be null to visit all lines
+        private void visit(final Column filter, final String expected, final Consumer<String> consumer) {
+            final var builder = new StringBuilder(256);
+            int raw = 0;
+            for (int i = 0; i < size; i++) {
+                final int shapeId = shapeIds[i];
+                if (shapeId == 0) {
+                    final var line = rawLines[raw++];
+                    if (filter == null) {
+                        consumer.accept(line);
+                    }
+                    continue;
+                }
+
+                final var shape = shapes[shapeId - 1];
+                boolean matches = filter == null;
+                builder.setLength(0);
+                builder.append('{');
+                for (int k = 0; k < shape.length; k++) {
+                    final var column = shape[k];
+                    final var value = column.next();
+                    if (column == filter && expected.equals(value)) {
+                        matches = true;
+                    }
+                    if (k > 0) {
+                        builder.append(',');
+                    }
+                    builder.append('"').append(column.key).append("\":").append(value);
+                }
+                if (matches) {
+                    consumer.accept(builder.append('}').toString());
+                }
+            }
+        }
+    }
+
+    private static class Column {
+        private final String key;
+        private final byte type;
+        private final String[] dictionary;
+        private final int[] ids;
+        private final long[] timestamps;
+        private final String[] values;
+        private int position;
+
+        private Column(final String key, final DataInputStream in) throws IOException {
+            this.key = key;
+            this.type = in.readByte();
+            switch (type) {
+                case TIMESTAMP: {
+                    timestamps = new long[readVarInt(in)];
+                    long previous = 0;
+                    for (int i = 0; i < timestamps.length; i++) {
+                        final long zigzag = readVarLong(in);
+                        previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                        timestamps[i] = previous;
+                    }
+                    dictionary = null;
+                    ids = null;
+                    values = null;
+                    break;
+                }
+                case DICTIONARY: {
+                    dictionary = new String[readVarInt(in)];
+                    for (int i = 0; i < dictionary.length; i++) {
+                        dictionary[i] = readString(in);
+                    }
+                    ids = new int[readVarInt(in)];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = readVarInt(in);
+                        if (ids[i] >= dictionary.length) {
+                            throw new IOException("Invalid dictionary entry " + ids[i] + " for column '" + key + "'");
+                        }
+                    }
+                    timestamps = null;
+                    values = null;
+                    break;
+                }
+                case STRING: {
+                    values = new String[readVarInt(in)];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = readString(in);
+                    }
+                    dictionary = null;
+                    ids = null;
+                    timestamps = null;
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown column type " + type + " for column '" + key + "'");
+            }
+        }
+
+        private boolean mayContain(final String value) {
+            return type != DICTIONARY || Arrays.asList(dictionary).contains(value);
+        }
+
+        private String next() {
+            final int index = position++;
+            switch (type) {
+                case TIMESTAMP:
+                    return renderTimestamp(timestamps[index]);
+                case DICTIONARY:
+                    return dictionary[ids[index]];
+                default:
+                    return values[index];
+            }
+        }
+    }
+
+    private static class DecodingInputStream extends InputStream {
+        private final BlockReader reader;
+        private byte[] current = new byte[0];
+        private int position;
+        private boolean first = true;
+        private boolean ended;
+
+        private DecodingInputStream(final BlockReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureData()) {
+                return -1;
+            }
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureData()) {
+                return -1;
+            }
+            final int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return current.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.in.close();
+        }
+
+        private boolean ensureData() throws IOException {
+            while (position == current.length) {
+                if (ended) {
+                    return false;
+                }
+                final var block = reader.next();
+                position = 0;
+                if (block == null) { // last line end of line is only known at the end
+                    ended = true;
+                    current = reader.endsWithNewLine && !first ? new byte[]{'\n'} : new byte[0];
+                    continue;
+                }
+                final var builder = new StringBuilder(block.size * 256);
+                block.visit(null, null, line -> {
+                    if (!first) {
+                        builder.append('\n');
+                    }
+                    first = false;
+                    builder.append(line);
+                });
+                current = builder.toString().getBytes(ISO_8859_1);
+            }
+            return true;
+        }
+    }
+}
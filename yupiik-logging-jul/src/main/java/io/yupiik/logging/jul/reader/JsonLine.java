@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// splits a flat JSON object line as written by JsonFormatter keeping the raw (escaped) text of keys and values
+final class JsonLine {
+    private final List<String> keys;
+    private final List<String> values;
+
+    private JsonLine(final List<String> keys, final List<String> values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    List<String> getKeys() {
+        return keys;
+    }
+
+    List<String> getValues() {
+        return values;
+    }
+
+    String get(final String key) {
+        final int idx = keys.indexOf(key);
+        return idx < 0 ? null : values.get(idx);
+    }
+
+    // the unescaped value if it is a JSON string, else the raw value (number, custom raw entry, ...)
+    static String unquote(final String value) {
+        if (value.length() < 2 || value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"') {
+            return value;
+        }
+        if (value.indexOf('\\') < 0) {
+            return value.substring(1, value.length() - 1);
+        }
+        final var out = new StringBuilder(value.length());
+        for (int i = 1; i < value.length() - 1; i++) {
+            final char c = value.charAt(i);
+            if (c != '\\' || i + 1 >= value.length() - 1) {
+                out.append(c);
+                continue;
+            }
+            final char next = value.charAt(++i);
+            switch (next) {
+                case 'b':
+                    out.append('\b');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 < value.length() - 1) {
+                        out.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                        i += 4;
+                    } else {
+                        out.append("\\u");
+                    }
+                    break;
+                default:
+                    out.append(next);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * @param line the line to parse.
+     * @return the parsed line or {@code null} if it is not a flat JSON object without whitespaces between tokens.
+     */
+    static JsonLine parse(final String line) {
+        final int length = line.length();
+        if (length < 2 || line.charAt(0) != '{' || line.charAt(length - 1) != '}') {
+            return null;
+        }
+        final var keys = new ArrayList<String>();
+        final var values = new ArrayList<String>();
+        if (length == 2) {
+            return new JsonLine(keys, values);
+        }
+
+        int i = 1;
+        while (true) {
+            if (line.charAt(i) != '"') {
+                return null;
+            }
+            final int keyEnd = endOfString(line, i);
+            if (keyEnd < 0 || keyEnd + 1 >= length || line.charAt(keyEnd + 1) != ':') {
+                return null;
+            }
+            final int valueStart = keyEnd + 2;
+            final int valueEnd = endOfValue(line, valueStart);
+            if (valueEnd <= valueStart || valueEnd >= length) {
+                return null;
+            }
+            keys.add(line.substring(i + 1, keyEnd));
+            values.add(line.substring(valueStart, valueEnd));
+
+            final char sep = line.charAt(valueEnd);
+            if (sep == '}') {
+                return valueEnd == length - 1 ? new JsonLine(keys, values) : null;
+            }
+            if (sep != ',') {
+                return null;
+            }
+            i = valueEnd + 1;
+            if (i >= length) {
+                return null;
+            }
+        }
+    }
+
+    // index of the closing quote
+    private static int endOfString(final String line, final int start) {
+        for (int i = start + 1; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // index right after the value
+    private static int endOfValue(final String line, final int start) {
+        if (start >= line.length()) {
+            return -1;
+        }
+        final char first = line.charAt(start);
+        if (first == '"') {
+            final int end = endOfString(line, start);
+            return end < 0 ? -1 : end + 1;
+        }
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            for (int i = start; i < line.length(); i++) {
+                final char c = line.charAt(i);
+                if (c == '"') {
+                    i = endOfString(line, i);
+                    if (i < 0) {
+                        return -1;
+                    }
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return i + 1;
+                    }
+                }
+            }
+            return -1;
+        }
+        for (int i = start; i < line.length(); i++) { // number, boolean, null or any raw custom entry
+            final char c = line.charAt(i);
+            if (c == ',' || c == '}') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
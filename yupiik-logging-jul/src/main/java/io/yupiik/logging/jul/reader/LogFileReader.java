@@ -0,0 +1,676 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Spliterators.spliteratorUnknownSize;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Reads the files written by {@link io.yupiik.logging.jul.handler.LocalFileHandler}: archives then live files,
+ * ordered by date and index (so in time order), lazily and with a bounded memory.
+ * <p>
+ * Compressed segments are inflated in background threads ({@link #setParallelism(int)}) at most {@link #setPrefetch(int)}
+ * segments in advance. In {@link #setFollow(boolean) follow mode} the last segment is followed as {@code tail -F} would do,
+ * including across rotations, until {@link #close()} is called.
+ * <p>
+ * Note: the filename pattern must be the resolved value (no {@code ${...}} placeholder).
+ */
+public class LogFileReader implements AutoCloseable {
+    private static final Chunk END = new Chunk(List.of(), null);
+
+    private String filenamePattern;
+    private Path archiveDirectory;
+    private String archiveFormat = "gzip";
+    private Charset encoding = UTF_8;
+    private int parallelism = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private int prefetch = 2;
+    private int chunkSize = 1024;
+    private boolean follow;
+    private long pollInterval = 250;
+
+    private volatile boolean closed;
+    private volatile ExecutorService executor;
+
+    public void setFilenamePattern(final String filenamePattern) {
+        this.filenamePattern = filenamePattern;
+    }
+
+    public void setArchiveDirectory(final Path archiveDirectory) {
+        this.archiveDirectory = archiveDirectory;
+    }
+
+    public void setArchiveFormat(final String archiveFormat) {
+        this.archiveFormat = archiveFormat;
+    }
+
+    public void setEncoding(final Charset encoding) {
+        this.encoding = encoding;
+    }
+
+    public void setParallelism(final int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public void setPrefetch(final int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public void setChunkSize(final int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public void setFollow(final boolean follow) {
+        this.follow = follow;
+    }
+
+    public void setPollInterval(final Duration pollInterval) {
+        this.pollInterval = pollInterval.toMillis();
+    }
+
+    /**
+     * @return the segments (archives and log files) currently matching the configuration, in time order.
+     * @throws IOException if a directory can't be listed.
+     */
+    public List<Segment> segments() throws IOException {
+        if (filenamePattern == null) {
+            throw new IllegalArgumentException("No filenamePattern set");
+        }
+        final var pattern = new File(filenamePattern);
+        final var regex = toRegex(pattern.getName(), archiveFormat);
+        final var segments = new ArrayList<Segment>();
+        collect(pattern.getAbsoluteFile().toPath().getParent(), regex, segments);
+        if (archiveDirectory != null) {
+            collect(archiveDirectory, regex, segments);
+        }
+        segments.sort(Comparator.naturalOrder()); // stable so log files stay before archives for the same segment
+
+        // if a segment is both in the archive and log directories (archiving in progress), the archive can be partial
+        // since the source is only deleted once the archive is written so keep the log file
+        final var result = new ArrayList<Segment>(segments.size());
+        for (final var segment : segments) {
+            if (result.isEmpty() || result.get(result.size() - 1).compareTo(segment) != 0) {
+                result.add(segment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the lines of all the segments in time order, the stream must be closed (it closes this reader).
+     * @throws IOException if the segments can't be listed.
+     */
+    public Stream<String> lines() throws IOException {
+        final var iterator = new LinesIterator(segments());
+        return StreamSupport.stream(spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Same as {@link #lines()} but only returns the JSON lines having this value for this field.
+     * Archives with a {@link BloomIndex} proving they don't contain the value are not read at all.
+     *
+     * @param field the JSON field to match.
+     * @param value the expected (unescaped) value.
+     * @return the matching lines, the stream must be closed (it closes this reader).
+     * @throws IOException if the segments can't be listed.
+     */
+    public Stream<String> lookup(final String field, final String value) throws IOException {
+        final var segments = new ArrayList<Segment>();
+        for (final var segment : segments()) {
+            if (mayContain(segment, field, value)) {
+                segments.add(segment);
+            }
+        }
+        final boolean plain = value.chars().allMatch(c -> c >= 0x20 && c < 0x7F && c != '"' && c != '\\' && c != '/');
+        final var iterator = new LinesIterator(segments);
+        return StreamSupport.stream(spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .filter(line -> {
+                    if (plain && !line.contains(value)) { // escaping can't change the value so it is a fast negative check
+                        return false;
+                    }
+                    final var parsed = JsonLine.parse(line);
+                    if (parsed == null) {
+                        return false;
+                    }
+                    final var actual = parsed.get(field);
+                    return actual != null && value.equals(JsonLine.unquote(actual));
+                })
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        final ExecutorService pool;
+        synchronized (this) { // executor() can't create a pool after that
+            pool = executor;
+        }
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    protected InputStream openSegment(final Segment segment, final InputStream raw) throws IOException {
+        if (!segment.isCompressed()) {
+            return raw;
+        }
+        if ("gzip".equalsIgnoreCase(segment.getFormat()) || "gz".equalsIgnoreCase(segment.getFormat())) {
+            return new GZIPInputStream(raw, 8192);
+        }
+        if (ColumnarArchive.FORMAT.equalsIgnoreCase(segment.getFormat())) {
+            return ColumnarArchive.decode(raw);
+        }
+        // consider file defines a zip whatever extension it is as LocalFileHandler
+        final var zip = new ZipInputStream(raw);
+        if (zip.getNextEntry() == null) {
+            zip.close();
+            throw new IOException("No entry in '" + segment.getPath() + "'");
+        }
+        return zip;
+    }
+
+    private boolean mayContain(final Segment segment, final String field, final String value) {
+        if (!segment.isCompressed()) {
+            return true;
+        }
+        final var index = BloomIndex.indexOf(segment.getPath());
+        if (!Files.exists(index)) {
+            return true;
+        }
+        try {
+            final var bloom = BloomIndex.read(index);
+            return !bloom.isIndexed(field) || bloom.mightContain(field, value);
+        } catch (final IOException e) { // corrupted or being written, just read the segment
+            return true;
+        }
+    }
+
+    private void collect(final Path directory, final Pattern regex, final List<Segment> segments) throws IOException {
+        if (directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        try (final var list = Files.list(directory)) {
+            list.forEach(path -> {
+                final Matcher matcher = regex.matcher(path.getFileName().toString());
+                if (matcher.matches() && Files.isRegularFile(path)) {
+                    final var index = matcher.group("index");
+                    segments.add(new Segment(
+                            path, matcher.group("date") == null ? "" : matcher.group("date"),
+                            index == null || index.isEmpty() ? 0 : Integer.parseInt(index),
+                            matcher.group("archive")));
+                }
+            });
+        }
+    }
+
+    // mimics LocalFileHandler naming but captures date, index and archive format
+    static Pattern toRegex(final String name, final String archiveFormat) {
+        final var regex = new StringBuilder();
+        boolean hasDate = false;
+        boolean hasIndex = false;
+        int i = 0;
+        while (i < name.length()) {
+            final char c = name.charAt(i);
+            if (c == '%' && !hasDate && name.startsWith("%sHm", i)) {
+                regex.append("(?<date>\\d{4}-\\d{2}-\\d{2}-\\d{2}-\\d{2})");
+                hasDate = true;
+                i += "%sHm".length();
+            } else if (c == '%' && !hasDate && name.startsWith("%sH", i)) {
+                regex.append("(?<date>\\d{4}-\\d{2}-\\d{2}-\\d{2})");
+                hasDate = true;
+                i += "%sH".length();
+            } else if (c == '%' && !hasDate && name.startsWith("%s", i)) {
+                regex.append("(?<date>\\d{4}-\\d{2}-\\d{2})");
+                hasDate = true;
+                i += "%s".length();
+            } else if (c == '%' && !hasIndex && name.indexOf('d', i) > i) {
+                regex.append("(?<index>\\d*)");
+                hasIndex = true;
+                i = name.indexOf('d', i) + 1;
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+                i++;
+            }
+        }
+        if (!hasDate) {
+            regex.append("(?<date>)");
+        }
+        if (!hasIndex) {
+            regex.append("(?<index>)");
+        }
+        return Pattern.compile(regex + "(?:\\.(?<archive>" + Pattern.quote(archiveFormat) + "))?");
+    }
+
+    private ExecutorService executor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new RejectedExecutionException("reader closed");
+                }
+                if (executor == null) {
+                    final var counter = new AtomicInteger();
+                    executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+                        final var thread = new Thread(r, LogFileReader.class.getName() + "-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return executor;
+    }
+
+    private boolean hasSegmentAfter(final Segment segment) {
+        try {
+            return segments().stream().anyMatch(it -> it.compareTo(segment) > 0);
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    public static final class Segment implements Comparable<Segment> {
+        private final Path path;
+        private final String date;
+        private final int index;
+        private final String format;
+
+        private Segment(final Path path, final String date, final int index, final String format) {
+            this.path = path;
+            this.date = date;
+            this.index = index;
+            this.format = format;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public boolean isCompressed() {
+            return format != null;
+        }
+
+        @Override
+        public int compareTo(final Segment o) {
+            final int dates = date.compareTo(o.date);
+            if (dates != 0) {
+                return dates;
+            }
+            return Integer.compare(index, o.index);
+        }
+
+        @Override
+        public String toString() {
+            return "Segment[" + path + ']';
+        }
+    }
+
+    private interface LineSource extends AutoCloseable {
+        String next() throws IOException; // null at the end
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final class Chunk {
+        private final List<String> lines;
+        private final Throwable error;
+
+        private Chunk(final List<String> lines, final Throwable error) {
+            this.lines = lines;
+            this.error = error;
+        }
+    }
+
+    // reads a compressed segment in background so it is ready when the consumer reaches it
+    private final class PrefetchedSource implements LineSource {
+        private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(2);
+        private volatile boolean cancelled;
+        private Iterator<String> current;
+        private boolean done;
+
+        private PrefetchedSource(final Segment segment) {
+            if (closed) {
+                done = true;
+                return;
+            }
+            final Runnable task = () -> {
+                try (final var reader = newReader(openSegment(segment, new BufferedInputStream(Files.newInputStream(segment.getPath()))))) {
+                    var lines = new ArrayList<String>(chunkSize);
+                    String line;
+                    while (!closed && !cancelled && (line = readLine(reader)) != null) {
+                        lines.add(line);
+                        if (lines.size() == chunkSize) {
+                            push(new Chunk(lines, null));
+                            lines = new ArrayList<>(chunkSize);
+                        }
+                    }
+                    if (!lines.isEmpty()) {
+                        push(new Chunk(lines, null));
+                    }
+                    push(END);
+                } catch (final IOException | RuntimeException e) {
+                    push(new Chunk(List.of(), e));
+                }
+            };
+            try {
+                executor().execute(task);
+            } catch (final RejectedExecutionException ree) { // closed concurrently
+                done = true;
+            }
+        }
+
+        private void push(final Chunk chunk) {
+            try {
+                while (!closed && !cancelled && !chunks.offer(chunk, pollInterval, MILLISECONDS)) {
+                    // retry until consumed or closed
+                }
+            } catch (final InterruptedException ie) { // reader closed
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String next() throws IOException {
+            while (current == null || !current.hasNext()) {
+                if (done) {
+                    return null;
+                }
+                final Chunk chunk;
+                try {
+                    chunk = chunks.poll(pollInterval, MILLISECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                if (closed) {
+                    return null;
+                }
+                if (chunk == null) {
+                    continue;
+                }
+                if (chunk == END) {
+                    done = true;
+                    return null;
+                }
+                if (chunk.error != null) {
+                    done = true;
+                    if (chunk.error instanceof IOException) {
+                        throw (IOException) chunk.error;
+                    }
+                    throw (RuntimeException) chunk.error;
+                }
+                current = chunk.lines.iterator();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void close() {
+            done = true;
+            cancelled = true;
+            chunks.clear();
+        }
+    }
+
+    private final class DirectSource implements LineSource {
+        private final BufferedReader reader;
+
+        private DirectSource(final Segment segment, final boolean followed) throws IOException {
+            final InputStream raw = followed ?
+                    new FollowingInputStream(segment) :
+                    new BufferedInputStream(Files.newInputStream(segment.getPath()));
+            this.reader = newReader(openSegment(segment, raw));
+        }
+
+        @Override
+        public String next() throws IOException {
+            return readLine(reader);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private BufferedReader newReader(final InputStream stream) {
+        return new BufferedReader(new InputStreamReader(stream, encoding));
+    }
+
+    private String readLine(final BufferedReader reader) throws IOException {
+        try {
+            return reader.readLine();
+        } catch (final EOFException eof) { // compressed segment not properly closed (crash or still written), data are incomplete
+            return null;
+        }
+    }
+
+    // tail -F like stream: waits for new bytes until a newer segment exists
+    private final class FollowingInputStream extends InputStream {
+        private final Segment segment;
+        private final ByteBuffer single = ByteBuffer.allocate(1);
+        private FileChannel channel;
+        private long position;
+
+        private FollowingInputStream(final Segment segment) throws IOException {
+            this.segment = segment;
+            this.channel = FileChannel.open(segment.getPath(), READ);
+        }
+
+        @Override
+        public int read() throws IOException {
+            single.clear();
+            final int read = read(single);
+            return read <= 0 ? -1 : (single.get(0) & 0xFF);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return read(ByteBuffer.wrap(b, off, len));
+        }
+
+        private int read(final ByteBuffer buffer) throws IOException {
+            boolean complete = false;
+            while (!closed) {
+                final int read = channel.read(buffer, position);
+                if (read > 0) {
+                    position += read;
+                    return read;
+                }
+                if (complete) { // no more data after the rotation
+                    return -1;
+                }
+                if (Files.exists(segment.getPath()) && Files.size(segment.getPath()) < position) { // truncated, restart
+                    channel.close();
+                    channel = FileChannel.open(segment.getPath(), READ);
+                    position = 0;
+                    continue;
+                }
+                complete = hasSegmentAfter(segment);
+                if (!complete) {
+                    try {
+                        Thread.sleep(pollInterval);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return -1;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class Pending {
+        private final Segment segment;
+        private PrefetchedSource source;
+
+        private Pending(final Segment segment) {
+            this.segment = segment;
+        }
+    }
+
+    private final class LinesIterator implements Iterator<String> {
+        private final Deque<Pending> pending = new ArrayDeque<>();
+        private Segment last;
+        private LineSource current;
+        private String next;
+
+        private LinesIterator(final List<Segment> segments) {
+            segments.forEach(it -> pending.add(new Pending(it)));
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            try {
+                while (!closed) {
+                    if (current == null && !nextSource()) {
+                        closeSources();
+                        return false;
+                    }
+                    next = current.next();
+                    if (next != null) {
+                        return true;
+                    }
+                    current.close();
+                    current = null;
+                }
+                closeSources();
+                return false;
+            } catch (final IOException e) {
+                closeSources();
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final var value = next;
+            next = null;
+            return value;
+        }
+
+        private boolean nextSource() throws IOException {
+            if (pending.isEmpty() && follow && last != null) { // rotation happened while following the previous one
+                for (final var segment : segments()) {
+                    if (segment.compareTo(last) > 0) {
+                        pending.add(new Pending(segment));
+                    }
+                }
+            }
+            if (pending.isEmpty()) {
+                return false;
+            }
+
+            final var head = pending.poll();
+            last = head.segment;
+            if (head.source != null) {
+                current = head.source;
+            } else {
+                final boolean followed = follow && pending.isEmpty();
+                current = head.segment.isCompressed() && !followed ?
+                        new PrefetchedSource(head.segment) :
+                        new DirectSource(head.segment, followed);
+            }
+
+            // inflate next compressed segments in background, the followed one is read in the caller thread
+            int remaining = prefetch;
+            final var it = pending.iterator();
+            while (remaining-- > 0 && it.hasNext()) {
+                final var next = it.next();
+                if (next.source == null && next.segment.isCompressed() && (!follow || it.hasNext())) {
+                    next.source = new PrefetchedSource(next.segment);
+                }
+            }
+            return true;
+        }
+
+        private void closeSources() {
+            try {
+                if (current != null) {
+                    current.close();
+                }
+            } catch (final IOException e) {
+                // no-op
+            }
+            current = null;
+            pending.stream().filter(it -> it.source != null).forEach(it -> it.source.close());
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.reader;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Sidecar index written by {@link io.yupiik.logging.jul.handler.LocalFileHandler} when {@code timeIndex} is enabled.
+ * <p>
+ * It is a sequence of fixed size entries (three big endian longs): the timestamp of the first record written after the entry,
+ * the offset of this record in the uncompressed segment and, for segments written with {@code compressOnWrite},
+ * the offset of the gzip member starting with this record ({@code -1} otherwise).
+ * The index file is the segment (or archive) path suffixed with {@link #EXTENSION}.
+ */
+public final class TimeIndex {
+    public static final String EXTENSION = ".idx";
+    public static final int ENTRY_SIZE = 3 * Long.BYTES;
+
+    private TimeIndex() {
+        // no-op
+    }
+
+    public static Path indexOf(final Path segment) {
+        return segment.resolveSibling(segment.getFileName().toString() + EXTENSION);
+    }
+
+    public static List<Entry> read(final Path index) throws IOException {
+        final long size = Files.size(index);
+        final var entries = new ArrayList<Entry>((int) (size / ENTRY_SIZE));
+        try (final var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            for (long i = 0; i < size / ENTRY_SIZE; i++) { // ignore a partially written last entry
+                entries.add(new Entry(in.readLong(), in.readLong(), in.readLong()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param entries the index entries.
+     * @param timestamp the epoch millis to look for.
+     * @return the index of the last entry with a timestamp lower or equal to {@code timestamp}, {@code -1} if none.
+     */
+    public static int floor(final List<Entry> entries, final long timestamp) {
+        int found = -1;
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).getTimestamp() <= timestamp) {
+                found = i;
+            } else {
+                break;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Opens a segment (log file or archive) positioned on the closest indexed record before {@code from}.
+     * Note that the index has the granularity it was written with so the caller must still filter records
+     * when an exact window is needed.
+     *
+     * @param segment the log file or archive (plain, gzip or zip).
+     * @param from the lower bound of the time range, {@code null} to start from the beginning.
+     * @param to the upper bound of the time range, {@code null} to read until the end.
+     * @return the uncompressed stream of the segment, limited to the range when the index enables it.
+     * @throws IOException if the segment can't be read.
+     */
+    public static InputStream open(final Path segment, final Instant from, final Instant to) throws IOException {
+        final var index = indexOf(segment);
+        final var entries = Files.exists(index) ? read(index) : List.<Entry>of();
+        final int startIdx = from == null ? -1 : floor(entries, from.toEpochMilli());
+        final var start = startIdx >= 0 ? entries.get(startIdx) : null;
+
+        long end = -1;
+        if (to != null) {
+            final long max = to.toEpochMilli();
+            for (int i = Math.max(0, startIdx); i < entries.size(); i++) {
+                if (entries.get(i).getTimestamp() > max) {
+                    end = entries.get(i).getOffset();
+                    break;
+                }
+            }
+        }
+
+        final var stream = openAt(segment, start);
+        if (end < 0) {
+            return stream;
+        }
+        return new LimitedInputStream(stream, end - (start == null ? 0 : start.getOffset()));
+    }
+
+    private static InputStream openAt(final Path segment, final Entry start) throws IOException {
+        final var name = segment.getFileName().toString();
+        if (name.endsWith(".gzip") || name.endsWith(".gz")) {
+            if (start != null && start.getCompressedOffset() >= 0) { // a gzip member starts there, no need to inflate previous data
+                final var channel = FileChannel.open(segment, READ);
+                try {
+                    channel.position(start.getCompressedOffset());
+                } catch (final IOException ioe) {
+                    channel.close();
+                    throw ioe;
+                }
+                return new GZIPInputStream(new BufferedInputStream(Channels.newInputStream(channel)), 8192);
+            }
+            return skip(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(segment)), 8192), start);
+        }
+        if (name.endsWith(".zip")) {
+            final var zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(segment)));
+            if (zip.getNextEntry() == null) {
+                zip.close();
+                throw new IOException("No entry in '" + segment + "'");
+            }
+            return skip(zip, start);
+        }
+
+        final var channel = FileChannel.open(segment, READ);
+        if (start != null) {
+            try {
+                channel.position(start.getOffset());
+            } catch (final IOException ioe) {
+                channel.close();
+                throw ioe;
+            }
+        }
+        return new BufferedInputStream(Channels.newInputStream(channel));
+    }
+
+    private static InputStream skip(final InputStream stream, final Entry start) throws IOException {
+        if (start == null) {
+            return stream;
+        }
+        long remaining = start.getOffset();
+        try {
+            while (remaining > 0) {
+                final long skipped = stream.skip(remaining);
+                if (skipped <= 0) {
+                    if (stream.read() < 0) {
+                        break;
+                    }
+                    remaining--;
+                } else {
+                    remaining -= skipped;
+                }
+            }
+        } catch (final IOException ioe) {
+            stream.close();
+            throw ioe;
+        }
+        return stream;
+    }
+
+    public static final class Entry {
+        private final long timestamp;
+        private final long offset;
+        private final long compressedOffset;
+
+        public Entry(final long timestamp, final long offset, final long compressedOffset) {
+            this.timestamp = timestamp;
+            this.offset = offset;
+            this.compressedOffset = compressedOffset;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getCompressedOffset() {
+            return compressedOffset;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry[timestamp=" + timestamp + ", offset=" + offset + ", compressedOffset=" + compressedOffset + ']';
+        }
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private LimitedInputStream(final InputStream in, final long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int read = super.read();
+            if (read >= 0) {
+                remaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ConfigurationSnapshotTest {
+    @Test
+    void environmentName() {
+        for (final var name : List.of("", ".level", "io.yupiik.Foo.level", "a-b_c/d", "é😀x")) {
+            final var expected = name.replaceAll("[^A-Za-z0-9]", "_").toUpperCase();
+            assertEquals(expected, ConfigurationSnapshot.toEnvironmentName(name), name);
+            assertEquals(expected.hashCode(), ConfigurationSnapshot.environmentNameHash(name), name);
+        }
+    }
+
+    @Test
+    void get() {
+        final var snapshot = new ConfigurationSnapshot(
+                Map.of("a.level", "FINE", "b.level", "INFO"),
+                Map.of("B_LEVEL", "WARNING"));
+        assertEquals("FINE", snapshot.get("a.level"));
+        assertEquals("WARNING", snapshot.get("b.level"));
+        assertNull(snapshot.get("c.level"));
+    }
+
+    @Test
+    void fromParents() {
+        final var snapshot = new ConfigurationSnapshot(
+                Map.of(".level", "INFO", "a.level", "FINE", "a.b.c.level", "FINEST", "..level", "OFF"), Map.of());
+        assertEquals("FINE", snapshot.getFromParents("a.b", ".level"));
+        assertEquals("FINEST", snapshot.getFromParents("a.b.c.D", ".level"));
+        assertEquals("FINE", snapshot.getFromParents("a.b.e", ".level"));
+        assertEquals("INFO", snapshot.getFromParents("z", ".level"));
+        assertNull(snapshot.getFromParents("", ".level"));
+        assertEquals("OFF", snapshot.getFromParents("..x", ".level"));
+    }
+
+    @Test
+    void fromParentsSystemProperties() {
+        final var snapshot = new ConfigurationSnapshot(Map.of("a.level", "FINE"), Map.of());
+        assertEquals("FINE", snapshot.getFromParents("a.b.c", ".level"));
+        System.setProperty("a.b.level", "SEVERE"); // after the parents were memoized
+        try {
+            assertEquals("SEVERE", snapshot.getFromParents("a.b.c", ".level"));
+            assertEquals("FINE", snapshot.getFromParents("a.d", ".level"));
+        } finally {
+            System.clearProperty("a.b.level");
+        }
+        assertEquals("FINE", snapshot.getFromParents("a.b.c", ".level"));
+    }
+
+    @Test
+    void fromParentsLookup() {
+        final var config = Map.of(".level", "INFO", "a.level", "FINE", "..level", "OFF");
+        final var lookups = new ArrayList<String>();
+        final Function<String, String> lookup = key -> {
+            lookups.add(key);
+            return config.get(key);
+        };
+        assertEquals("FINE", ConfigurationSnapshot.getFromParents("a.b.c", ".level", lookup));
+        assertEquals("INFO", ConfigurationSnapshot.getFromParents("z", ".level", lookup));
+        assertNull(ConfigurationSnapshot.getFromParents("", ".level", lookup));
+        assertEquals("OFF", ConfigurationSnapshot.getFromParents("..x", ".level", lookup));
+        // nearest parent first, leaves are never read
+        assertEquals(List.of("a.b.level", "a.level", ".level", "..level"), lookups);
+    }
+}
@@ -21,17 +21,21 @@ import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.lang.ref.WeakReference;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Map;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class YupiikLoggersTest {
@@ -93,6 +97,112 @@ class YupiikLoggersTest {
         assertTrue(formatted.endsWith("}\n"), formatted);
     }
 
+    @Test
+    void cachedLevel() {
+        final var loggers = new YupiikLoggers() {
+            @Override
+            public String getProperty(final String name) {
+                return "YupiikLoggersTest.cachedLevel.level".equals(name) ? "FINE" : null;
+            }
+        };
+        final var parent = loggers.getLogger("YupiikLoggersTest.cachedLevel", null);
+        final var child = loggers.getLogger("YupiikLoggersTest.cachedLevel.child", null);
+        assertTrue(child.isLoggable(Level.FINE)); // inherited from the configuration
+        assertFalse(child.isLoggable(Level.FINER));
+
+        child.setLevel(Level.WARNING);
+        assertFalse(child.isLoggable(Level.INFO));
+        assertTrue(child.isLoggable(Level.SEVERE));
+
+        child.setLevel(null); // inherit from the parent
+        parent.setLevel(Level.FINEST);
+        assertTrue(child.isLoggable(Level.FINEST));
+
+        parent.setLevel(Level.OFF);
+        assertFalse(child.isLoggable(Level.SEVERE));
+        assertFalse(child.isLoggable(Level.OFF));
+    }
+
+    @Test
+    void systemPropertiesAfterFirstLoggers() {
+        final var loggers = new YupiikLoggers();
+        assertEquals(Level.INFO, loggers.getLogger("YupiikLoggersTest.sysprops.first", null).getLevel());
+        System.setProperty("YupiikLoggersTest.sysprops.level", "FINEST");
+        try {
+            assertEquals(Level.FINEST, loggers.getLogger("YupiikLoggersTest.sysprops.second", null).getLevel());
+        } finally {
+            System.clearProperty("YupiikLoggersTest.sysprops.level");
+        }
+    }
+
+    @Test
+    void maxStronglyHeldLoggers() {
+        final var loggers = new YupiikLoggers() {
+            @Override
+            public String getProperty(final String name) {
+                return (YupiikLoggers.class.getName() + ".loggers.max").equals(name) ? "3" : super.getProperty(name);
+            }
+        };
+        final var first = loggers.getLogger("first", null);
+        final var second = loggers.getLogger("second", null);
+        final var third = loggers.getLogger("third", null);
+        assertSame(first, loggers.getLogger("first", null));
+        assertSame(third, loggers.getLogger("third", null));
+        assertSame(second.getParent(), third.getParent());
+        // root (configured), first and second are strongly held
+        assertEquals(Map.of("registered", 4L, "weak", 1L, "created", 4L, "collected", 0L), loggers.getLoggerMetrics());
+    }
+
+    @Test
+    void weakRetention() throws InterruptedException {
+        final var loggers = new YupiikLoggers() {
+            @Override
+            public String getProperty(final String name) {
+                return (YupiikLoggers.class.getName() + ".loggers.retention").equals(name) ? "weak" : super.getProperty(name);
+            }
+        };
+        final var configured = loggers.getLogger("", null);
+        var logger = loggers.getLogger("YupiikLoggersTest.weakRetention", null);
+        final var ref = new WeakReference<>(logger);
+        // the parent (YupiikLoggersTest) is weakly held too, the child references it
+        assertEquals(Map.of("registered", 3L, "weak", 2L, "created", 3L, "collected", 0L), loggers.getLoggerMetrics());
+
+        logger = null;
+        for (int i = 0; i < 100 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        assertNull(loggers.getLoggerOrNull("YupiikLoggersTest.weakRetention"));
+        assertEquals(Map.of("registered", 1L, "weak", 0L, "created", 3L, "collected", 2L), loggers.getLoggerMetrics());
+        assertSame(configured, loggers.getLoggerOrNull(""));
+
+        // recreated on demand
+        assertNotNull(loggers.getLogger("YupiikLoggersTest.weakRetention", null));
+    }
+
+    @Test
+    void foreignLoggerIsStronglyHeld() throws InterruptedException {
+        final var loggers = new YupiikLoggers() {
+            @Override
+            public String getProperty(final String name) {
+                return (YupiikLoggers.class.getName() + ".loggers.retention").equals(name) ? "weak" : super.getProperty(name);
+            }
+        };
+        // LogManager#demandLogger registers a plain logger then looks the name up again
+        assertFalse(loggers.addLogger(new Logger("YupiikLoggersTest.foreign", null) {
+        }));
+        final var ref = new WeakReference<>(loggers.getLoggerOrNull("YupiikLoggersTest.foreign"));
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNotNull(ref.get());
+        assertSame(ref.get(), loggers.getLoggerOrNull("YupiikLoggersTest.foreign"));
+        // only the parent (YupiikLoggersTest) is weakly held
+        assertEquals(1L, loggers.getLoggerMetrics().get("weak"));
+    }
+
     public static class TestHandler extends Handler {
         @Override
         public void publish(final LogRecord record) {
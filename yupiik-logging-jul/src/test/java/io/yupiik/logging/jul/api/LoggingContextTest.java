@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.api;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoggingContextTest {
+    @AfterEach
+    void clear() {
+        LoggingContext.clear();
+    }
+
+    @Test
+    void snapshots() {
+        final var first = LoggingContext.Snapshot.EMPTY.with("a", "1").with("b", "2");
+        final var second = first.with("a", "3").without("b").with("c", "4");
+        assertEquals(Map.of("a", "1", "b", "2"), first.toMap());
+        assertEquals("{a=3, c=4}", second.toString());
+        assertNull(second.get("b"));
+        assertSame(first, first.with("a", "1"));
+        assertSame(first, first.without("missing"));
+        assertTrue(first.without("a").without("b").isEmpty());
+    }
+
+    @Test
+    void compaction() {
+        var snapshot = LoggingContext.Snapshot.EMPTY;
+        for (int i = 0; i < 1_000; i++) {
+            snapshot = snapshot.with("key" + (i % 3), Integer.toString(i));
+        }
+        assertEquals(Map.of("key0", "999", "key1", "997", "key2", "998"), snapshot.toMap());
+    }
+
+    @Test
+    void bigContext() {
+        var snapshot = LoggingContext.Snapshot.EMPTY;
+        for (int i = 0; i < 100; i++) { // more live keys than the compaction depth
+            snapshot = snapshot.with("key" + i, "v");
+        }
+        for (int i = 0; i < 300; i++) {
+            snapshot = snapshot.with("key" + (i % 100), Integer.toString(i));
+            assertEquals(100, snapshot.size());
+        }
+        snapshot = snapshot.without("key0").without("key1");
+        assertEquals(98, snapshot.size());
+        assertEquals(98, snapshot.toMap().size());
+        assertEquals("299", snapshot.get("key99"));
+        assertNull(snapshot.get("key0"));
+    }
+
+    @Test
+    void scopes() {
+        LoggingContext.put("request", "r1");
+        try (final var scope = LoggingContext.with("user", "u1")) {
+            assertEquals("{request=r1, user=u1}", LoggingContext.current().toString());
+        }
+        assertEquals("{request=r1}", LoggingContext.current().toString());
+        LoggingContext.remove("request");
+        assertSame(LoggingContext.Snapshot.EMPTY, LoggingContext.current());
+    }
+
+    @Test
+    void freeze() throws InterruptedException {
+        final var record = new LogRecord(Level.INFO, "test");
+        assertSame(record, LoggingContext.freeze(record));
+
+        LoggingContext.put("user", "u1");
+        final var frozen = LoggingContext.freeze(record);
+        final var captured = LoggingContext.current();
+        LoggingContext.put("user", "u2");
+        assertSame(captured, LoggingContext.of(frozen));
+        assertEquals("u2", LoggingContext.of(record).get("user"));
+
+        final var propagated = new AtomicReference<String>();
+        final var thread = new Thread(captured.wrap(() -> propagated.set(LoggingContext.get("user"))));
+        thread.start();
+        thread.join();
+        assertEquals("u1", propagated.get());
+    }
+}
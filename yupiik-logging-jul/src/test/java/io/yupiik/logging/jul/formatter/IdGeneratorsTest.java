@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import io.yupiik.logging.jul.api.IdGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdGeneratorsTest {
+    @Test
+    void uuid7() {
+        final var uuid = IdGenerators.newUuid7(1_700_000_000_123L);
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertEquals(1_700_000_000_123L, uuid.getMostSignificantBits() >>> 16);
+
+        final var value = UUID.fromString(IdGenerators.UUID_V7.next());
+        assertEquals(7, value.version());
+
+        // time ordered
+        final var before = IdGenerators.newUuid7(1_700_000_000_123L).toString();
+        final var after = IdGenerators.newUuid7(1_700_000_000_124L).toString();
+        assertTrue(before.compareTo(after) < 0, () -> before + " >= " + after);
+    }
+
+    @Test
+    void counter() {
+        final Set<String> ids = ConcurrentHashMap.newKeySet();
+        IntStream.range(0, 8).parallel().forEach(thread -> {
+            for (int i = 0; i < 1_000; i++) {
+                assertTrue(ids.add(IdGenerators.COUNTER.next()));
+            }
+        });
+        assertEquals(8_000, ids.size());
+        assertTrue(ids.iterator().next().matches("[0-9a-f]+-[0-9a-f]+-[0-9a-f]+"), ids::toString);
+    }
+
+    @Test
+    void of() {
+        assertSame(IdGenerators.RANDOM, IdGenerators.of("random"));
+        assertSame(IdGenerators.UUID_V7, IdGenerators.of("uuid7"));
+        assertSame(IdGenerators.COUNTER, IdGenerators.of(" Counter "));
+        assertEquals("custom", IdGenerators.of(Custom.class.getName()).next());
+    }
+
+    public static class Custom implements IdGenerator {
+        @Override
+        public String next() {
+            return "custom";
+        }
+    }
+}
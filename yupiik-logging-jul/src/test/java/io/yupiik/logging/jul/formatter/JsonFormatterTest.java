@@ -15,14 +15,32 @@
  */
 package io.yupiik.logging.jul.formatter;
 
+import io.yupiik.logging.jul.api.LoggingContext;
+import io.yupiik.logging.jul.api.RecordFreezer;
+import io.yupiik.logging.jul.api.Utf8Buffer;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
+import java.util.stream.LongStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class JsonFormatterTest {
@@ -62,6 +80,194 @@ class JsonFormatterTest {
                 jsonFormatter.format(record));
     }
 
+    @Test
+    void escapeNames() {
+        final var record = createRecord();
+        record.setThrown(null);
+        record.setLoggerName("the\"logger");
+        record.setSourceClassName("the\\source");
+        final var jsonFormatter = new JsonFormatter();
+        for (int i = 0; i < 2; i++) { // second time uses the cached fragments
+            final var expected = "{\"timestamp\":\"1970-01-01T00:00Z\",\"level\":\"INFO\",\"logger\":\"the\\\"logger\"," +
+                    "\"method\":\"the.method\",\"message\":\"test message\",\"class\":\"the\\\\source\"}\n";
+            assertEquals(expected, jsonFormatter.format(record));
+
+            final var buffer = new Utf8Buffer();
+            jsonFormatter.formatTo(record, buffer);
+            assertEquals(expected, buffer.toString());
+        }
+    }
+
+    @Test
+    void loggingContext() {
+        final var record = createRecord();
+        record.setThrown(null);
+        final var jsonFormatter = new JsonFormatter();
+        final LogRecord frozen;
+        try (final var scope = LoggingContext.with("user", "u\"1")) {
+            frozen = LoggingContext.freeze(record);
+        }
+        final var expected = "{\"timestamp\":\"1970-01-01T00:00Z\",\"level\":\"INFO\",\"logger\":\"the.logger\"," +
+                "\"method\":\"the.method\",\"message\":\"test message\",\"class\":\"the.source\",\"context\":{\"user\":\"u\\\"1\"}}\n";
+        assertEquals(expected, jsonFormatter.format(frozen));
+        final var buffer = new Utf8Buffer();
+        jsonFormatter.formatTo(frozen, buffer);
+        assertEquals(expected, buffer.toString());
+        assertEquals(expected.replace(",\"context\":{\"user\":\"u\\\"1\"}", ""), jsonFormatter.format(record));
+    }
+
+    @Test
+    void singleFrozenRecord() {
+        final var record = createRecord();
+        record.setThrown(null);
+        final var jsonFormatter = new JsonFormatter();
+        jsonFormatter.setCustomEntriesMapper(r -> Map.of("custom", "true"));
+        jsonFormatter.setStructuredContext((r, emitter) -> emitter.add("structured", 1L));
+        final LogRecord contextFrozen;
+        final LogRecord frozen;
+        try (final var scope = LoggingContext.with("user", "u1")) {
+            contextFrozen = LoggingContext.freeze(record);
+            frozen = jsonFormatter.apply(contextFrozen);
+        }
+        assertTrue(frozen instanceof RecordFreezer.FrozenLogRecord<?>);
+        assertSame(record, ((RecordFreezer.FrozenLogRecord<?>) frozen).getDelegate());
+        // the context frozen record can be shared with other handlers so it is not enriched in place
+        assertNotSame(contextFrozen, frozen);
+        assertNull(RecordFreezer.attachment(contextFrozen, JsonFormatter.class.getName(), Object.class));
+        assertNotNull(RecordFreezer.attachment(frozen, JsonFormatter.class.getName(), Object.class));
+        assertEquals("{\"timestamp\":\"1970-01-01T00:00Z\",\"level\":\"INFO\",\"logger\":\"the.logger\"," +
+                "\"method\":\"the.method\",\"message\":\"test message\",\"class\":\"the.source\",\"custom\":true," +
+                "\"context\":{\"user\":\"u1\"},\"structured\":1}\n", jsonFormatter.format(frozen));
+    }
+
+    @Test
+    void structuredContext() {
+        final var record = createRecord();
+        record.setThrown(null);
+        final var jsonFormatter = new JsonFormatter();
+        final var user = new ThreadLocal<String>();
+        jsonFormatter.setStructuredContext((r, emitter) -> emitter
+                .add("user", user.get())
+                .add("count", 3L)
+                .add("ratio", 0.5)
+                .add("nan", Double.NaN)
+                .startObject("request")
+                .add("ok", true)
+                .add("path", "/a\"b")
+                .startObject("unclosed"));
+        user.set("u\n1");
+
+        final var expected = "{\"timestamp\":\"1970-01-01T00:00Z\",\"level\":\"INFO\",\"logger\":\"the.logger\"," +
+                "\"method\":\"the.method\",\"message\":\"test message\",\"class\":\"the.source\"," +
+                "\"user\":\"u\\n1\",\"count\":3,\"ratio\":0.5,\"nan\":\"NaN\",\"request\":{\"ok\":true,\"path\":\"/a\\\"b\",\"unclosed\":{}}}\n";
+        assertEquals(expected, jsonFormatter.format(record));
+        final var buffer = new Utf8Buffer();
+        jsonFormatter.formatTo(record, buffer);
+        assertEquals(expected, buffer.toString());
+
+        // async: captured in the caller thread
+        final var frozen = jsonFormatter.apply(record);
+        user.remove();
+        assertEquals(expected, jsonFormatter.format(frozen));
+        assertEquals(expected.replace("\"u\\n1\"", "null"), jsonFormatter.format(record));
+    }
+
+    @Test
+    void unbalancedStructuredContext() {
+        final var record = createRecord();
+        record.setThrown(null);
+        final var jsonFormatter = new JsonFormatter();
+        jsonFormatter.setStructuredContext((r, emitter) -> emitter
+                .startObject("request")
+                .add("ok", true)
+                .endObject()
+                .endObject()
+                .add("user", "u1"));
+
+        final var expected = "{\"timestamp\":\"1970-01-01T00:00Z\",\"level\":\"INFO\",\"logger\":\"the.logger\"," +
+                "\"method\":\"the.method\",\"message\":\"test message\",\"class\":\"the.source\"," +
+                "\"request\":{\"ok\":true},\"user\":\"u1\"}\n";
+        assertEquals(expected, jsonFormatter.format(record));
+        final var buffer = new Utf8Buffer();
+        jsonFormatter.formatTo(record, buffer);
+        assertEquals(expected, buffer.toString());
+        assertEquals(expected, jsonFormatter.format(jsonFormatter.apply(record)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"test message", "quote \" slash \\ / tab \t nl \n ctrl \u0001", "é à ü 中文", "emoji \uD83D\uDE00 lone \uD83D"})
+    void formatTo(final String message) {
+        final var record = createRecord();
+        record.setMessage(message);
+        record.setLoggerName("the.logger.é");
+        final var jsonFormatter = new JsonFormatter();
+        final var fields = new LinkedHashMap<String, String>();
+        fields.put("service.name", message);
+        jsonFormatter.setAdditionalFields(fields);
+        jsonFormatter.setCustomEntriesMapper(r -> Map.of("custom", "{\"raw\":true}"));
+
+        final var buffer = new Utf8Buffer(8, 16);
+        buffer.append((byte) '>');
+        jsonFormatter.formatTo(record, buffer);
+        assertEquals('>' + jsonFormatter.format(record), new String(buffer.array(), 0, buffer.size(), UTF_8));
+        assertArrayEquals(('>' + jsonFormatter.format(record)).getBytes(UTF_8), Arrays.copyOf(buffer.array(), buffer.size()));
+    }
+
+    @Test
+    void subclassEncoding() {
+        final var record = createRecord();
+        record.setThrown(null);
+        final var custom = new JsonFormatter() {
+            @Override
+            protected StringBuilder simpleEscape(final String value) {
+                return new StringBuilder("\"").append(value.toUpperCase(Locale.ROOT)).append('"');
+            }
+        };
+        final var expected = "{\"timestamp\":\"1970-01-01T00:00Z\",\"level\":\"INFO\",\"logger\":\"the.logger\"," +
+                "\"method\":\"the.method\",\"message\":\"TEST MESSAGE\",\"class\":\"the.source\"}\n";
+        assertEquals(expected, custom.format(record));
+        final var buffer = new Utf8Buffer();
+        custom.formatTo(record, buffer); // no reflection to detect the override (native image), subclasses opt in
+        assertEquals(expected, buffer.toString());
+
+        final var optIn = new JsonFormatter() {
+            @Override
+            protected boolean useDefaultEncoding() {
+                return true;
+            }
+        };
+        final var optInBuffer = new Utf8Buffer();
+        optIn.formatTo(record, optInBuffer);
+        assertEquals(new JsonFormatter().format(record), optInBuffer.toString());
+    }
+
+    @Test
+    void subclassThrowableRendering() {
+        final var record = createRecord();
+        record.setThrown(new IllegalStateException("oops"));
+        final var custom = new JsonFormatter() {
+            @Override
+            protected String toString(final Throwable thrown) {
+                return "custom:" + thrown.getMessage();
+            }
+        };
+        assertTrue(custom.format(record).contains("\"exception\":\"custom:oops\""), custom.format(record));
+    }
+
+    @Test
+    void timestamps() {
+        final var random = new Random(1234);
+        final var buffer = new Utf8Buffer();
+        LongStream.concat(
+                        LongStream.of(0, 1, -1, 999, 1000, 60_000, -62_167_219_200_000L, 253_402_300_799_999L, 253_402_300_800_000L, -62_167_219_200_001L),
+                        LongStream.generate(() -> random.nextLong() % 300_000_000_000_000L).limit(10_000))
+                .forEach(millis -> {
+                    buffer.reset();
+                    JsonFormatter.appendTimestamp(buffer, millis);
+                    assertEquals(OffsetDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.of("UTC")).toString(), buffer.toString());
+                });
+    }
+
     private LogRecord createRecord() {
         final LogRecord record = new LogRecord(Level.INFO, "test message");
         record.setLoggerName("the.logger");
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import io.yupiik.logging.jul.api.Utf8Buffer;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonStringsTest {
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "''|'\"\"'",
+            "simple|'\"simple\"'",
+            "a/b é|'\"a/b é\"'",
+            "'q\"b\\\\'|'\"q\\\"b\\\\\\\\\"'",
+            "'l1\nl2\r\tx\b\f'|'\"l1\\nl2\\r\\tx\\b\\f\"'",
+            "'\u0001\u001f'|'\"\\u0001\\u001f\"'",
+            "'smile 😀!'|'\"smile \\ud83d\\ude00!\"'"
+    })
+    void escape(final String value, final String expected) {
+        assertEquals(expected, JsonStrings.escape(value).toString());
+
+        final var builder = new StringBuilder("prefix:");
+        JsonStrings.escape(value, builder);
+        assertEquals("prefix:" + expected, builder.toString());
+
+        final var buffer = new Utf8Buffer();
+        JsonStrings.escape(value, buffer);
+        assertEquals(expected, buffer.toString());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MessageTemplatesTest {
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "no parameter",
+            "{0}",
+            "{0} and {1}",
+            "{1} before {0}",
+            "missing {3}",
+            "leading zero {00}",
+            "don't {0}",
+            "it''s {0}",
+            "'{0}' is quoted, not {1}",
+            "'quoted {0}' and {0}",
+            "unclosed '{0}",
+            "closing } alone {0}",
+            "{0,number,#.##}",
+            "{0,choice,0#none|1#one}",
+            "{ 0}",
+            "{0 }",
+            "{a} {0}",
+            "unclosed {0",
+            "trailing {",
+            "{12345678901} {0}",
+            "{2}{4}{5}"
+    })
+    void format(final String message) {
+        final var params = new Object[]{
+                "text", 1234567, null, 3.14159, new BigDecimal("12345.678901"), List.of("a", "b")
+        };
+        assertSame(message, params);
+    }
+
+    @Test
+    void noParameters() {
+        assertSame("don't {0}", null);
+        assertSame("don't {0}", new Object[0]);
+    }
+
+    @Test
+    void date() {
+        assertSame("on {0}", new Object[]{new Date(0)});
+    }
+
+    @Test
+    void cached() {
+        final var message = "cached {0}";
+        assertSame(message, new Object[]{"a"});
+        assertSame(message, new Object[]{"b"});
+        assertSame(message, new Object[]{1000L});
+    }
+
+    private void assertSame(final String message, final Object[] params) {
+        final var record = new LogRecord(Level.INFO, message);
+        record.setParameters(params);
+        assertEquals(new SimpleFormatter().formatMessage(record), MessageTemplates.format(record), message);
+    }
+}
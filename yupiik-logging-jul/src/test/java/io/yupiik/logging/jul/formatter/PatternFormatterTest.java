@@ -15,6 +15,9 @@
  */
 package io.yupiik.logging.jul.formatter;
 
+import io.yupiik.logging.jul.api.LoggingContext;
+import io.yupiik.logging.jul.api.Utf8Buffer;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
@@ -23,6 +26,8 @@ import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class PatternFormatterTest {
     @ParameterizedTest
@@ -47,6 +52,7 @@ class PatternFormatterTest {
             "%exception,'\njava.lang.IllegalArgumentException\n\tat this.is.the.Class.methodName(TheFile.java:123)'",
             "%T,2",
             "%threadId,2",
+            "%fingerprint,ad659d3e64b1ac27",
             "%t,main",
             "%threadName,main",
             // complex
@@ -63,6 +69,52 @@ class PatternFormatterTest {
         record.getThrown().setStackTrace(new StackTraceElement[]{
                 new StackTraceElement("this.is.the.Class", "methodName", "TheFile.java", 123)
         });
-        assertEquals(output, new PatternFormatter(pattern).format(record), pattern);
+        final var formatter = new PatternFormatter(pattern);
+        assertEquals(output, formatter.format(record), pattern);
+
+        final var buffer = new Utf8Buffer();
+        formatter.formatTo(record, buffer);
+        assertEquals(output, buffer.toString(), pattern);
+    }
+
+    @Test
+    void needsSource() {
+        assertFalse(new PatternFormatter("%d %m%n").needsSource());
+        assertTrue(new PatternFormatter("%C %m%n").needsSource());
+        assertTrue(new PatternFormatter("%M %m%n").needsSource());
+    }
+
+    @Test
+    void context() {
+        final var record = new LogRecord(Level.INFO, "test message");
+        final var formatter = new PatternFormatter("[%X{user}][%X{missing}] %m %X");
+        try (final var scope = LoggingContext.with("user", "u1")) {
+            assertEquals("[u1][] test message {user=u1}", formatter.format(record));
+        }
+        assertEquals("[][] test message ", formatter.format(record));
+    }
+
+    @Test
+    void subclassEncoding() {
+        final var record = new LogRecord(Level.INFO, "test message");
+        final var custom = new PatternFormatter("%m%n") {
+            @Override
+            public String format(final LogRecord record) {
+                return "custom " + super.format(record);
+            }
+        };
+        final var buffer = new Utf8Buffer();
+        custom.formatTo(record, buffer); // no reflection to detect the override (native image), subclasses opt in
+        assertEquals("custom test message\n", buffer.toString());
+
+        final var optIn = new PatternFormatter("%m%n") {
+            @Override
+            protected boolean useBytesEncoding() {
+                return true;
+            }
+        };
+        final var optInBuffer = new Utf8Buffer();
+        optIn.formatTo(record, optInBuffer);
+        assertEquals("test message\n", optInBuffer.toString());
     }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThrowableRendererTest {
+    @Test
+    void sameAsPrintStackTrace() {
+        final var root = new IllegalStateException("root", new IllegalArgumentException("cause"));
+        root.addSuppressed(new RuntimeException("suppressed", new IllegalStateException("nested")));
+        final var circular = new RuntimeException("circular");
+        final var circularCause = new RuntimeException("circular cause", circular);
+        circular.initCause(circularCause);
+        root.getCause().initCause(circular);
+
+        final var renderer = new ThrowableRenderer(-1, List.of());
+        assertEquals(printStackTrace(root), renderer.render(root));
+
+        final var noTrace = new Error("no trace", null, false, false) {
+        };
+        assertEquals(printStackTrace(noTrace), renderer.render(noTrace));
+    }
+
+    @Test
+    void cache() {
+        final var renderer = new ThrowableRenderer(-1, List.of());
+        final var rendered = new String[2];
+        for (int i = 0; i < rendered.length; i++) { // same stack trace
+            rendered[i] = renderer.render(newException("cached"));
+        }
+        assertSame(rendered[0], rendered[1]);
+        assertEquals(printStackTrace(newException("other")), renderer.render(newException("other")));
+    }
+
+    @Test
+    void maxDepth() {
+        final var error = newException("depth");
+        final var lines = new ThrowableRenderer(2, List.of()).render(error).split(System.lineSeparator());
+        assertEquals(4, lines.length);
+        assertEquals("java.lang.IllegalStateException: depth", lines[0]);
+        assertEquals("\tat " + error.getStackTrace()[0], lines[1]);
+        assertEquals("\tat " + error.getStackTrace()[1], lines[2]);
+        assertEquals("\t... " + (error.getStackTrace().length - 2) + " more", lines[3]);
+    }
+
+    @Test
+    void fold() {
+        final var error = new IllegalStateException("fold");
+        error.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.app.Service", "run", "Service.java", 1),
+                new StackTraceElement("org.framework.Proxy", "invoke", "Proxy.java", 2),
+                new StackTraceElement("org.framework.Interceptor", "invoke", "Interceptor.java", 3),
+                new StackTraceElement("com.app.Caller", "call", "Caller.java", 4),
+                new StackTraceElement("org.framework.Proxy", "invoke", "Proxy.java", 5),
+                new StackTraceElement("com.app.Main", "main", "Main.java", 6)
+        });
+        assertEquals(String.join(System.lineSeparator(),
+                        "java.lang.IllegalStateException: fold",
+                        "\tat com.app.Service.run(Service.java:1)",
+                        "\t... 2 folded",
+                        "\tat com.app.Caller.call(Caller.java:4)",
+                        "\tat org.framework.Proxy.invoke(Proxy.java:5)",
+                        "\tat com.app.Main.main(Main.java:6)",
+                        ""),
+                new ThrowableRenderer(-1, List.of("org.framework.")).render(error));
+    }
+
+    @Test
+    void fingerprint() {
+        final var fingerprints = new String[2];
+        for (int i = 0; i < fingerprints.length; i++) { // same trace, different messages
+            fingerprints[i] = ThrowableRenderer.fingerprint(newException("message " + i));
+        }
+        assertEquals(fingerprints[0], fingerprints[1]);
+        assertEquals(16, fingerprints[0].length());
+        assertNotEquals(fingerprints[0], ThrowableRenderer.fingerprint(new IllegalArgumentException()));
+    }
+
+    @Test
+    void suppressionWindow() {
+        final var renderer = new ThrowableRenderer(-1, List.of(), 1000);
+        final var rendered = new String[4];
+        final long[] timestamps = {0, 10, 999, 1000};
+        String fingerprint = null;
+        for (int i = 0; i < rendered.length; i++) { // same trace
+            final var error = newException("storm " + i);
+            fingerprint = ThrowableRenderer.fingerprint(error);
+            rendered[i] = renderer.render(error, timestamps[i]);
+        }
+        assertTrue(rendered[0].contains("\tat "), rendered[0]);
+        assertEquals("exception_ref=" + fingerprint + " java.lang.IllegalStateException: storm 1" + System.lineSeparator(), rendered[1]);
+        assertEquals("exception_ref=" + fingerprint + " java.lang.IllegalStateException: storm 2" + System.lineSeparator(), rendered[2]);
+        assertTrue(rendered[3].startsWith("java.lang.IllegalStateException: storm 3" + System.lineSeparator() + "\tat "), rendered[3]);
+    }
+
+    private static IllegalStateException newException(final String message) {
+        return new IllegalStateException(message);
+    }
+
+    private static String printStackTrace(final Throwable error) {
+        final var writer = new StringWriter();
+        try (final PrintWriter printWriter = new PrintWriter(writer)) {
+            error.printStackTrace(printWriter);
+        }
+        return writer.toString();
+    }
+}
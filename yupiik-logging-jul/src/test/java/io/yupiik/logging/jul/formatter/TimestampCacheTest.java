@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.formatter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static java.time.temporal.ChronoUnit.MILLIS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimestampCacheTest {
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "", // OffsetDateTime.toString(), trims the fraction
+            "ISO_OFFSET_DATE_TIME", // variable fraction width
+            "yyyy-MM-dd HH:mm:ss",
+            "yyyy-MM-dd HH:mm:ss.SSS",
+            "SSS|HH:mm:ss|MMMM",
+            "HH:mm:ss.SSSSSS",
+            "HH:mm:ss.S",
+            "EEEE dd MMMM yyyy HH:mm:ss,SSS a"
+    })
+    void format(final String pattern) {
+        final var utc = ZoneId.of("UTC");
+        final Function<Instant, String> renderer = pattern.isEmpty() ?
+                i -> OffsetDateTime.ofInstant(i, utc).toString() :
+                i -> OffsetDateTime.ofInstant(i, utc).format("ISO_OFFSET_DATE_TIME".equals(pattern) ?
+                        DateTimeFormatter.ISO_OFFSET_DATE_TIME : DateTimeFormatter.ofPattern(pattern));
+        final var cache = new TimestampCache(renderer);
+        for (final long base : new long[]{0, 1_600_000_000_000L, 1_600_000_059_000L, -1_000L, 253_402_300_799_000L}) {
+            for (int millis = 0; millis < 2_500; millis += 7) {
+                final var instant = Instant.ofEpochMilli(base + millis);
+                assertEquals(renderer.apply(instant), cache.format(instant), () -> pattern + ": " + instant);
+            }
+        }
+        final var precise = Instant.ofEpochSecond(1_600_000_000L, 123_456_789);
+        assertEquals(renderer.apply(precise), cache.format(precise));
+    }
+
+    @Test
+    void logRecordInstants() { // microsecond precision, the formatter only renders milliseconds
+        final var formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+        final var utc = ZoneId.of("UTC");
+        final var renderings = new AtomicInteger();
+        final var cache = new TimestampCache(i -> {
+            renderings.incrementAndGet();
+            return OffsetDateTime.ofInstant(i, utc).format(formatter);
+        });
+        final int probes = renderings.getAndSet(0);
+        for (int i = 0; i < 1_000; i++) {
+            final var instant = new LogRecord(Level.INFO, "test").getInstant();
+            assertEquals(OffsetDateTime.ofInstant(instant.truncatedTo(MILLIS), utc).format(formatter), cache.format(instant));
+        }
+        assertTrue(probes > 0);
+        assertTrue(renderings.get() < 100, () -> "cache not used: " + renderings.get() + " renderings");
+    }
+
+    @Test
+    void exactRenderers() { // ISO_OFFSET_DATE_TIME trims the fraction so the milliseconds can't be patched
+        final var utc = ZoneId.of("UTC");
+        final var renderings = new AtomicInteger();
+        final var cache = new TimestampCache(i -> {
+            renderings.incrementAndGet();
+            return OffsetDateTime.ofInstant(i, utc).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        });
+        for (int i = 0; i < 1_000; i++) {
+            final var instant = Instant.ofEpochMilli(1_600_000_000_000L + i * 3);
+            assertEquals(OffsetDateTime.ofInstant(instant, utc).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME), cache.format(instant));
+        }
+        // probed once then one rendering per millisecond
+        assertTrue(renderings.get() <= 1_000 + 8, () -> "probed again: " + renderings.get() + " renderings");
+    }
+}
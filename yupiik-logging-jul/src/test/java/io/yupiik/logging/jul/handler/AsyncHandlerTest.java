@@ -17,19 +17,35 @@ package io.yupiik.logging.jul.handler;
 
 import io.yupiik.logging.jul.YupiikLoggerFactory;
 import io.yupiik.logging.jul.YupiikLoggers;
+import io.yupiik.logging.jul.api.BatchPublisher;
+import io.yupiik.logging.jul.api.LoggingContext;
+import io.yupiik.logging.jul.api.RecordFreezer;
+import io.yupiik.logging.jul.formatter.JsonFormatter;
+import io.yupiik.logging.jul.formatter.PatternFormatter;
+import io.yupiik.logging.jul.logger.YupiikLogger;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.logging.ErrorManager;
 import java.util.logging.Handler;
+import java.util.logging.Level;
 import java.util.logging.LogRecord;
+import java.util.stream.IntStream;
 
 import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class AsyncHandlerTest {
     private YupiikLoggers oldLoggers;
@@ -42,7 +58,10 @@ class AsyncHandlerTest {
     @AfterEach
     void after() {
         SimpleHandler.RECORDS.clear();
+        FreezingHandler.applied = null;
         SimpleFormattedHandler.RECORDS.clear();
+        BatchHandler.BATCHES.clear();
+        FailingBatchHandler.RECORDS.clear();
         AsyncTestHandler.conf = null;
         YupiikLoggerFactory.unsafeSet(oldLoggers);
     }
@@ -72,6 +91,72 @@ class AsyncHandlerTest {
         assertEquals("test", records.get(0).getMessage());
     }
 
+    @Test
+    void batch() {
+        final var conf = Map.of(
+                ".handlers", AsyncTestHandler.class.getName(),
+                AsyncHandler.class.getName() + ".delegate.class", BatchHandler.class.getName(),
+                AsyncHandler.class.getName() + ".batch.size", "10"
+        );
+        AsyncTestHandler.conf = conf;
+        final var loggers = new YupiikLoggers() {
+            @Override
+            public String getProperty(final String name) {
+                return conf.get(name);
+            }
+        };
+        YupiikLoggerFactory.unsafeSet(loggers);
+        final var logger = loggers.getLogger("foo", null);
+        for (int i = 0; i < 100; i++) {
+            logger.info("test" + i);
+        }
+        // flush
+        final var handler = loggers.getLogger("", null).getHandlers()[0];
+        handler.close();
+
+        final var batches = BatchHandler.batches();
+        assertTrue(batches.stream().allMatch(it -> !it.isEmpty() && it.size() <= 10), batches::toString);
+        assertEquals(
+                IntStream.range(0, 100).mapToObj(i -> "test" + i).collect(toList()),
+                batches.stream().flatMap(Collection::stream).collect(toList()));
+    }
+
+    @Test
+    void batchFailure() {
+        final var conf = Map.of(
+                ".handlers", AsyncTestHandler.class.getName(),
+                AsyncHandler.class.getName() + ".delegate.class", FailingBatchHandler.class.getName(),
+                AsyncHandler.class.getName() + ".batch.size", "10",
+                AsyncHandler.class.getName() + ".worker.count", "0" // drained at close time in batches of 10
+        );
+        AsyncTestHandler.conf = conf;
+        final var loggers = new YupiikLoggers() {
+            @Override
+            public String getProperty(final String name) {
+                return conf.get(name);
+            }
+        };
+        YupiikLoggerFactory.unsafeSet(loggers);
+        final var logger = loggers.getLogger("foo", null);
+        final var handler = loggers.getLogger("", null).getHandlers()[0];
+        final var errors = new ArrayList<String>();
+        handler.setErrorManager(new ErrorManager() {
+            @Override
+            public synchronized void error(final String msg, final Exception ex, final int code) {
+                errors.add(msg);
+            }
+        });
+        for (int i = 0; i < 20; i++) {
+            logger.info(i == 5 ? "fail" : "test" + i);
+        }
+        handler.close();
+
+        assertEquals(
+                IntStream.range(0, 20).filter(i -> i != 5).mapToObj(i -> "test" + i).collect(toList()),
+                FailingBatchHandler.records());
+        assertEquals(List.of("batch", "fail", "batch"), errors);
+    }
+
     @Test
     void asyncContext() {
         final var conf = Map.of(
@@ -105,6 +190,73 @@ class AsyncHandlerTest {
                 records.get(0).substring(records.get(0).indexOf(',') + 1));
     }
 
+    @Test
+    void singleCarrierRecord() {
+        AsyncTestHandler.conf = Map.of(
+                AsyncHandler.class.getName() + ".delegate.class", FreezingHandler.class.getName(),
+                AsyncHandler.class.getName() + ".worker.count", "0");
+        final var formatter = new JsonFormatter();
+        formatter.setCustomEntriesMapper(r -> Map.of("custom", "true"));
+        final var handler = new AsyncTestHandler();
+        handler.setFormatter(formatter);
+        final var record = new LogRecord(Level.INFO, "test");
+        try (final var scope = LoggingContext.with("user", "u1")) {
+            handler.publish(record);
+        }
+        handler.close();
+
+        final var records = SimpleHandler.records();
+        assertEquals(1, records.size());
+        // context and formatter attachments share a single record wrapping the original one
+        final var frozen = assertInstanceOf(RecordFreezer.FrozenLogRecord.class, records.get(0));
+        assertSame(FreezingHandler.applied, frozen);
+        assertSame(record, frozen.getDelegate());
+        assertEquals("handler", frozen.getAttachment(FreezingHandler.class.getName()));
+        assertEquals("u1", LoggingContext.of(frozen).get("user"));
+        assertEquals(Map.of("custom", "true"), RecordFreezer.attachment(frozen, JsonFormatter.class.getName(), Map.class));
+
+        // once shared it is not modified anymore
+        assertNotSame(frozen, RecordFreezer.attach(frozen, "other", "value"));
+        assertNull(frozen.getAttachment("other"));
+    }
+
+    @Test
+    void sourceInference() {
+        final var conf = Map.of(
+                ".handlers", AsyncTestHandler.class.getName(),
+                AsyncHandler.class.getName() + ".delegate.class", SimpleFormattedHandler.class.getName(),
+                AsyncTestHandler.class.getName() + ".formatter", "pattern(%C#%M %m%n)"
+        );
+        AsyncTestHandler.conf = conf;
+        final var loggers = new YupiikLoggers() {
+            @Override
+            public String getProperty(final String name) {
+                return conf.get(name);
+            }
+        };
+        YupiikLoggerFactory.unsafeSet(loggers);
+        final var logger = loggers.getLogger("foo", null);
+        logger.info("test");
+        logger.logp(Level.INFO, "explicit.Source", "run", "test");
+        // flush
+        final var handler = loggers.getLogger("", null).getHandlers()[0];
+        handler.close();
+        final var async = SimpleFormattedHandler.records();
+        SimpleFormattedHandler.RECORDS.clear();
+
+        // same output as a synchronous handler
+        final var sync = new SimpleFormattedHandler();
+        sync.setFormatter(new PatternFormatter("%C#%M %m%n"));
+        final var syncLogger = loggers.getLogger("bar", null);
+        syncLogger.setUseParentHandlers(false);
+        syncLogger.addHandler(sync);
+        syncLogger.info("test");
+        syncLogger.logp(Level.INFO, "explicit.Source", "run", "test");
+
+        assertEquals(List.of(YupiikLogger.class.getName() + "#log test\n", "explicit.Source#run test\n"), async);
+        assertEquals(async, SimpleFormattedHandler.records());
+    }
+
     public static class ContextEnricher implements Function<LogRecord, Map<String, String>> {
         private static final ThreadLocal<Map<String, String>> CTX = new ThreadLocal<>();
 
@@ -148,6 +300,59 @@ class AsyncHandlerTest {
         }
     }
 
+    public static class BatchHandler extends BaseHandler implements BatchPublisher {
+        private static final List<List<String>> BATCHES = new ArrayList<>();
+
+        public synchronized static List<List<String>> batches() {
+            return new ArrayList<>(BATCHES);
+        }
+
+        @Override
+        public void publish(final LogRecord record) {
+            publishAll(List.of(record));
+        }
+
+        @Override
+        public void publishAll(final List<LogRecord> records) {
+            synchronized (BatchHandler.class) {
+                BATCHES.add(records.stream().map(LogRecord::getMessage).collect(toList()));
+            }
+        }
+    }
+
+    public static class FailingBatchHandler extends BaseHandler implements BatchPublisher {
+        private static final List<String> RECORDS = new ArrayList<>();
+
+        public synchronized static List<String> records() {
+            return new ArrayList<>(RECORDS);
+        }
+
+        @Override
+        public void publish(final LogRecord record) {
+            if ("fail".equals(record.getMessage())) {
+                throw new IllegalStateException("fail");
+            }
+            synchronized (FailingBatchHandler.class) {
+                RECORDS.add(record.getMessage());
+            }
+        }
+
+        @Override
+        public void publishAll(final List<LogRecord> records) {
+            throw new IllegalStateException("batch");
+        }
+    }
+
+    public static class FreezingHandler extends SimpleHandler implements RecordFreezer {
+        private static LogRecord applied;
+
+        @Override
+        public LogRecord apply(final LogRecord record) {
+            applied = record;
+            return RecordFreezer.attach(record, FreezingHandler.class.getName(), "handler");
+        }
+    }
+
     public static class SimpleHandler extends BaseHandler {
         private static final List<LogRecord> RECORDS = new ArrayList<>();
 
@@ -15,13 +15,24 @@
  */
 package io.yupiik.logging.jul.handler;
 
+import io.yupiik.logging.jul.formatter.JsonFormatter;
+import io.yupiik.logging.jul.formatter.PatternFormatter;
+import io.yupiik.logging.jul.reader.BloomIndex;
+import io.yupiik.logging.jul.reader.ColumnarArchive;
+import io.yupiik.logging.jul.reader.LogFileReader;
+import io.yupiik.logging.jul.reader.TimeIndex;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -30,6 +41,7 @@ import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -41,12 +53,16 @@ import java.util.function.Supplier;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static java.lang.Thread.sleep;
 import static java.time.temporal.ChronoUnit.HOURS;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -210,6 +226,612 @@ class LocalFileHandlerTest {
         }
     }
 
+    @Test
+    public void compressOnWrite(@TempDir final Path temp) throws IOException, InterruptedException {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+        final var archives = logs.resolve("archives");
+
+        final var config = new HashMap<String, String>();
+        config.put("archiveDirectory", archives.toString());
+        config.put("archiveOlderThan", "PT0.001S"); // ~immediately for the test
+        config.put("filenamePattern", logs.resolve("app.%s.%03d.log").toString());
+        config.put("compressOnWrite", "true");
+        config.put("limit", "6"); // each record will rotate the file
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        handler.setFormatter(new MessageOnlyEOLFormatter());
+        try {
+            handler.publish(new LogRecord(Level.INFO, "data_0"));
+            sleep(100);
+            handler.publish(new LogRecord(Level.INFO, "data_1"));
+            sleep(100);
+            handler.publish(new LogRecord(Level.INFO, "data_2")); // closing the gzip member touches the file so archived next time
+        } finally {
+            handler.close();
+        }
+
+        final var date = LocalDate.now().toString();
+        final var archive = archives.resolve("app." + date + ".000.log.gzip");
+        assertTrue(Files.exists(archive), archive::toString);
+        assertEquals("data_0\n", gunzip(archive));
+
+        final var current = logs.resolve("app." + date + ".002.log.gzip");
+        assertTrue(Files.exists(current), current::toString);
+        assertEquals("data_2\n", gunzip(current));
+
+        // depending how fast the rotation was, second segment can be archived or not yet but it is never rewritten
+        final var second = Stream.of(logs, archives)
+                .map(it -> it.resolve("app." + date + ".001.log.gzip"))
+                .filter(Files::exists)
+                .findFirst()
+                .orElseThrow();
+        assertEquals("data_1\n", gunzip(second));
+    }
+
+    @Test
+    public void suspendAfterRotation(@TempDir final Path temp) throws IOException {
+        final var config = new HashMap<String, String>();
+        config.put("archiveDirectory", temp.resolve("archives").toString());
+        config.put("filenamePattern", temp.resolve("app.%s.%03d.log").toString());
+        config.put("limit", "6"); // each record will rotate the file
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        handler.setFormatter(new MessageOnlyEOLFormatter());
+        try {
+            handler.publish(new LogRecord(Level.INFO, "data_0"));
+            handler.publish(new LogRecord(Level.INFO, "data_1")); // rotation
+            handler.suspend();
+            assertFalse(handler.isOpen());
+            handler.publish(new LogRecord(Level.INFO, "data_2")); // reopened
+            assertTrue(handler.isOpen());
+        } finally {
+            handler.close();
+        }
+
+        final var date = LocalDate.now().toString();
+        assertEquals("data_0\n", Files.readString(temp.resolve("app." + date + ".000.log")));
+        assertEquals("data_1\ndata_2\n", Files.readString(temp.resolve("app." + date + ".001.log")));
+    }
+
+    @Test
+    public void compressOnWriteIdleFlush(@TempDir final Path temp) throws IOException, InterruptedException {
+        final var config = new HashMap<String, String>();
+        config.put("archiveDirectory", temp.resolve("archives").toString());
+        config.put("filenamePattern", temp.resolve("app.%s.%03d.log").toString());
+        config.put("compressOnWrite", "true");
+        config.put("compressOnWriteFlushInterval", "PT0.05S");
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        handler.setFormatter(new MessageOnlyEOLFormatter());
+        try {
+            handler.publish(new LogRecord(Level.INFO, "data_0")); // no sync flush yet, the file was just opened
+            final var file = temp.resolve("app." + LocalDate.now() + ".000.log.gzip");
+            for (int i = 0; i < 100 && !"data_0\n".equals(gunzipAvailable(file)); i++) { // no more record, the timer flushes
+                sleep(50);
+            }
+            assertEquals("data_0\n", gunzipAvailable(file));
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    public void columnarArchive(@TempDir final Path temp) throws IOException, InterruptedException {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+        final var archives = logs.resolve("archives");
+
+        final var config = new HashMap<String, String>();
+        config.put("archiveDirectory", archives.toString());
+        config.put("archiveOlderThan", "PT0.001S"); // ~immediately for the test
+        config.put("archiveFormat", "columnar");
+        config.put("filenamePattern", logs.resolve("app.%s.%03d.log").toString());
+        config.put("limit", "6"); // each record will rotate the file
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        handler.setFormatter(new MessageOnlyEOLFormatter());
+        try {
+            handler.publish(new LogRecord(Level.INFO, "data_0"));
+            sleep(100);
+            handler.publish(new LogRecord(Level.INFO, "data_1"));
+        } finally {
+            handler.close();
+        }
+
+        final var date = LocalDate.now().toString();
+        final var archive = archives.resolve("app." + date + ".000.log.columnar");
+        assertTrue(Files.exists(archive), archive::toString);
+        try (final var in = ColumnarArchive.decode(Files.newInputStream(archive))) {
+            assertEquals("data_0\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        final var reader = new LogFileReader();
+        reader.setFilenamePattern(config.get("filenamePattern"));
+        reader.setArchiveDirectory(archives);
+        reader.setArchiveFormat("columnar");
+        try (final var lines = reader.lines()) {
+            assertEquals(List.of("data_0", "data_1"), lines.collect(toList()));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void timeIndex(final boolean compressOnWrite, @TempDir final Path temp) throws IOException {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", logs.resolve("app.%s.%03d.log").toString());
+        config.put("compressOnWrite", Boolean.toString(compressOnWrite));
+        config.put("timeIndex", "true");
+        config.put("timeIndexByteInterval", "1"); // each record is indexed
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        handler.setFormatter(new MessageOnlyEOLFormatter());
+        try {
+            for (int i = 0; i < 3; i++) {
+                final var record = new LogRecord(Level.INFO, "data_" + i);
+                record.setInstant(Instant.ofEpochMilli(1000 * (i + 1)));
+                handler.publish(record);
+            }
+        } finally {
+            handler.close();
+        }
+
+        final var segment = logs.resolve("app." + LocalDate.now() + ".000.log" + (compressOnWrite ? ".gzip" : ""));
+        final var entries = TimeIndex.read(TimeIndex.indexOf(segment));
+        assertEquals(List.of(1000L, 2000L, 3000L), entries.stream().map(TimeIndex.Entry::getTimestamp).collect(toList()));
+        assertEquals(List.of(0L, 7L, 14L), entries.stream().map(TimeIndex.Entry::getOffset).collect(toList()));
+        assertEquals(compressOnWrite, entries.stream().allMatch(it -> it.getCompressedOffset() >= 0));
+
+        try (final var in = TimeIndex.open(segment, Instant.ofEpochMilli(2500), null)) {
+            assertEquals("data_1\ndata_2\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (final var in = TimeIndex.open(segment, Instant.ofEpochMilli(2000), Instant.ofEpochMilli(2000))) {
+            assertEquals("data_1\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void bloomIndex(@TempDir final Path temp) throws IOException, InterruptedException {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+        final var archives = logs.resolve("archives");
+
+        final var config = new HashMap<String, String>();
+        config.put("archiveDirectory", archives.toString());
+        config.put("archiveOlderThan", "PT0.001S"); // ~immediately for the test
+        config.put("filenamePattern", logs.resolve("app.%s.%03d.log").toString());
+        config.put("bloomFields", "traceId, requestId");
+        config.put("limit", "6"); // each record will rotate the file
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        handler.setFormatter(new MessageOnlyEOLFormatter());
+        try {
+            handler.publish(new LogRecord(Level.INFO, "{\"traceId\":\"t0\",\"message\":\"first\"}"));
+            sleep(100);
+            handler.publish(new LogRecord(Level.INFO, "{\"traceId\":\"t1\",\"message\":\"second\"}"));
+        } finally {
+            handler.close();
+        }
+
+        final var date = LocalDate.now().toString();
+        final var archive = archives.resolve("app." + date + ".000.log.gzip");
+        final var bloom = BloomIndex.read(BloomIndex.indexOf(archive));
+        assertEquals(List.of("traceId", "requestId"), bloom.getFields());
+        assertTrue(bloom.mightContain("traceId", "t0"));
+        assertFalse(bloom.mightContain("traceId", "t1"));
+
+        final var opened = new ArrayList<String>();
+        final var reader = new LogFileReader() {
+            @Override
+            protected InputStream openSegment(final Segment segment, final InputStream raw) throws IOException {
+                opened.add(segment.getPath().getFileName().toString());
+                return super.openSegment(segment, raw);
+            }
+        };
+        reader.setFilenamePattern(config.get("filenamePattern"));
+        reader.setArchiveDirectory(archives);
+        try (final var lines = reader.lookup("traceId", "t1")) {
+            assertEquals(List.of("{\"traceId\":\"t1\",\"message\":\"second\"}"), lines.collect(toList()));
+        }
+        assertEquals(List.of("app." + date + ".001.log"), opened);
+    }
+
+    @Test
+    public void multiProcess(@TempDir final Path temp) throws Exception {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", logs.resolve("app.%s.%03d.log").toString());
+        config.put("multiProcess", "true");
+        config.put("limit", "1024");
+
+        // file locks are per JVM but handlers of the same JVM are supported so it simulates processes
+        final var handlers = Stream.generate(() -> new LocalFileHandler() {
+                    @Override
+                    protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                        final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                        return s != null ? mapper.apply(s) : defaultValue.get();
+                    }
+                })
+                .limit(3)
+                .peek(it -> it.setFormatter(new MessageOnlyEOLFormatter()))
+                .collect(toList());
+        final var threads = new ArrayList<Thread>();
+        for (int h = 0; h < handlers.size(); h++) {
+            final var handler = handlers.get(h);
+            final var id = h;
+            for (int t = 0; t < 2; t++) {
+                final var thread = new Thread(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        handler.publish(new LogRecord(Level.INFO, "process-" + id + "-" + Thread.currentThread().getName() + "-" + i));
+                    }
+                }, "thread" + t);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+        for (final var thread : threads) {
+            thread.join();
+        }
+        handlers.forEach(LocalFileHandler::close);
+
+        final var files = Files.list(logs)
+                .filter(it -> it.getFileName().toString().endsWith(".log"))
+                .sorted()
+                .collect(toList());
+        assertTrue(files.size() > 1, files::toString);
+        final var lines = new ArrayList<String>();
+        for (int i = 0; i < files.size(); i++) {
+            final var file = files.get(i);
+            if (i < files.size() - 1) { // no double rotation: a file is only rotated when full
+                assertTrue(Files.size(file) >= 1024, () -> file + ": " + file.toFile().length());
+            }
+            lines.addAll(Files.readAllLines(file));
+        }
+        assertEquals(1200, lines.size());
+        assertTrue(lines.stream().allMatch(it -> it.matches("process-[0-2]-thread[01]-[0-9]+")), lines::toString);
+        assertEquals(1200, new HashSet<>(lines).size());
+    }
+
+    @Test
+    public void multiProcessLowVolume(@TempDir final Path temp) throws Exception {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", logs.resolve("app.%s.%03d.log").toString());
+        config.put("multiProcess", "true");
+        config.put("limit", "1024");
+        config.put("dateCheckInterval", "PT1M");
+
+        final var now = new AtomicReference<>(Instant.now());
+        final var clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneId.systemDefault();
+            }
+
+            @Override
+            public Clock withZone(final ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        };
+        final var handlers = Stream.generate(() -> new LocalFileHandler(clock) {
+                    @Override
+                    protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                        final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                        return s != null ? mapper.apply(s) : defaultValue.get();
+                    }
+                })
+                .limit(2)
+                .peek(it -> it.setFormatter(new MessageOnlyEOLFormatter()))
+                .collect(toList());
+        try {
+            handlers.get(1).publish(new LogRecord(Level.INFO, "low-0"));
+            for (int i = 0; i < 200; i++) { // rotates the shared file
+                handlers.get(0).publish(new LogRecord(Level.INFO, "high-" + i));
+            }
+            now.set(now.get().plusSeconds(61));
+            handlers.get(1).publish(new LogRecord(Level.INFO, "low-1")); // follows the rotation of the other process
+        } finally {
+            handlers.forEach(LocalFileHandler::close);
+        }
+
+        final var files = Files.list(logs)
+                .filter(it -> it.getFileName().toString().endsWith(".log"))
+                .sorted()
+                .collect(toList());
+        assertTrue(files.size() > 1, files::toString);
+        assertTrue(Files.readAllLines(files.get(0)).contains("low-0"));
+        assertTrue(Files.readAllLines(files.get(files.size() - 1)).contains("low-1"), files::toString);
+    }
+
+    @Test
+    public void multiProcessTruncation(@TempDir final Path temp) throws Exception {
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", temp.resolve("app.%s.%03d.log").toString());
+        config.put("multiProcess", "true");
+        config.put("maxRecordSize", "8");
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        handler.setEncoding("UTF-8");
+        handler.setFormatter(new MessageOnlyEOLFormatter());
+        try {
+            handler.publish(new LogRecord(Level.INFO, "abcdé€xyz")); // 7 bytes would cut the euro sign
+        } finally {
+            handler.close();
+        }
+        assertEquals("abcdé\n", Files.readString(temp.resolve("app." + LocalDate.now() + ".000.log"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void publishAll(@TempDir final Path temp) throws IOException {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", logs.resolve("app.%s.%03d.log").toString());
+        config.put("limit", "200");
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        handler.setFormatter(new MessageOnlyEOLFormatter());
+        handler.setEncoding("UTF-8");
+        try {
+            handler.publish(new LogRecord(Level.INFO, "single"));
+            handler.publishAll(IntStream.range(0, 100)
+                    .mapToObj(i -> new LogRecord(Level.INFO, "record_" + i + "_é"))
+                    .collect(toList()));
+            handler.publish(new LogRecord(Level.INFO, "single again"));
+        } finally {
+            handler.close();
+        }
+
+        final var files = Files.list(logs).sorted().collect(toList());
+        assertTrue(files.size() > 1, files::toString);
+        final var lines = new ArrayList<String>();
+        for (int i = 0; i < files.size(); i++) {
+            final var file = files.get(i);
+            if (i < files.size() - 1) {
+                assertTrue(Files.size(file) >= 200, () -> file + ": " + file.toFile().length());
+            }
+            lines.addAll(Files.readAllLines(file));
+        }
+        assertEquals(
+                Stream.concat(Stream.concat(
+                                        Stream.of("single"),
+                                        IntStream.range(0, 100).mapToObj(i -> "record_" + i + "_é")),
+                                Stream.of("single again"))
+                        .collect(toList()),
+                lines);
+    }
+
+    @Test
+    public void concurrentRecordsAndBatches(@TempDir final Path temp) throws Exception {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", logs.resolve("app.%s.%03d.log").toString());
+        config.put("bufferSize", "512");
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        final var formatter = new PatternFormatter("%m%n"); // bytes formatter
+        handler.setFormatter(formatter);
+        handler.setEncoding("UTF-8");
+        final var threads = new ArrayList<Thread>();
+        try {
+            for (int t = 0; t < 4; t++) {
+                final var id = t;
+                final var thread = new Thread(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        if (id == 0) {
+                            final var batch = i;
+                            handler.publishAll(IntStream.range(0, 10)
+                                    .mapToObj(r -> new LogRecord(Level.INFO, "batch-" + batch + "-" + r))
+                                    .collect(toList()));
+                        } else {
+                            handler.publish(new LogRecord(Level.INFO, "single-" + id + "-" + i));
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (final var thread : threads) {
+                thread.join();
+            }
+        } finally {
+            handler.close();
+        }
+
+        final var lines = Files.readAllLines(Files.list(logs).findFirst().orElseThrow());
+        assertEquals(2_600, lines.size());
+        // the order of each writer is kept and a batch is never split by other records
+        final var batches = lines.stream().filter(it -> it.startsWith("batch-")).collect(toList());
+        assertEquals(IntStream.range(0, 200).boxed()
+                .flatMap(b -> IntStream.range(0, 10).mapToObj(r -> "batch-" + b + "-" + r))
+                .collect(toList()), batches);
+        for (int i = 0; i < lines.size(); i++) {
+            final var line = lines.get(i);
+            if (line.startsWith("batch-") && line.endsWith("-0")) {
+                assertEquals(line.substring(0, line.length() - 1) + '9', lines.get(i + 9), "batch starting at line " + i);
+            }
+        }
+        for (int t = 1; t < 4; t++) {
+            final var prefix = "single-" + t + "-";
+            assertEquals(IntStream.range(0, 200).mapToObj(i -> prefix + i).collect(toList()),
+                    lines.stream().filter(it -> it.startsWith(prefix)).collect(toList()));
+        }
+    }
+
+    @Test
+    public void concurrentSizeRotation(@TempDir final Path temp) throws Exception {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", logs.resolve("app.%s.%03d.log").toString());
+        config.put("limit", "4096");
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        handler.setFormatter(new PatternFormatter("%m%n")); // bytes are written concurrently under the read lock
+        handler.setEncoding("UTF-8");
+        final var threads = new ArrayList<Thread>();
+        try {
+            for (int t = 0; t < 4; t++) {
+                final var id = t;
+                final var thread = new Thread(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        handler.publish(new LogRecord(Level.INFO, String.format("record-%d-%04d", id, i)));
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (final var thread : threads) {
+                thread.join();
+            }
+        } finally {
+            handler.close();
+        }
+
+        final List<Path> files;
+        try (final var list = Files.walk(logs)) {
+            files = list.filter(it -> it.getFileName().toString().endsWith(".log")).sorted().collect(toList());
+        }
+        assertTrue(files.size() > 1, files::toString);
+        long lines = 0;
+        for (int i = 0; i < files.size(); i++) {
+            final var file = files.get(i);
+            lines += Files.readAllLines(file).size();
+            if (i < files.size() - 1) { // no lost size update: rotated once full, at most one record per thread later
+                final long size = Files.size(file);
+                assertTrue(size >= 4096 && size <= 4096 + 4 * 14, () -> file + ": " + size);
+            }
+        }
+        assertEquals(8_000, lines);
+    }
+
+    @Test
+    public void jsonBytes(@TempDir final Path temp) throws IOException {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", logs.resolve("app.%s.%03d.log").toString());
+        config.put("timeIndex", "true");
+
+        final var handler = new LocalFileHandler() {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        final var formatter = new JsonFormatter();
+        handler.setFormatter(formatter);
+        handler.setEncoding("UTF-8");
+        final var records = IntStream.range(0, 10)
+                .mapToObj(i -> {
+                    final var record = new LogRecord(Level.INFO, "record_" + i + "_é\"\uD83D\uDE00");
+                    record.setLoggerName("test");
+                    record.setInstant(Instant.ofEpochMilli(1_600_000_000_000L + i));
+                    return record;
+                })
+                .collect(toList());
+        try {
+            handler.publish(records.get(0));
+            handler.publishAll(records.subList(1, records.size()));
+        } finally {
+            handler.close();
+        }
+
+        final var files = Files.list(logs).filter(it -> it.getFileName().toString().endsWith(".log")).collect(toList());
+        assertEquals(1, files.size(), files::toString);
+        assertEquals(
+                records.stream().map(formatter::format).collect(joining()),
+                Files.readString(files.get(0), StandardCharsets.UTF_8));
+    }
+
+    private static String gunzip(final Path file) throws IOException {
+        try (final var in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // the member is not finished while the file is written so only read what is already inflatable
+    private static String gunzipAvailable(final Path file) throws IOException {
+        final var out = new ByteArrayOutputStream();
+        try (final var in = new GZIPInputStream(Files.newInputStream(file))) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                out.write(b);
+            }
+        } catch (final EOFException eof) {
+            // expected
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
     private static List<String> purgeMaxArchiveIteration(final Path logs,
                                                          final AtomicReference<Instant> now,
                                                          final LocalFileHandler handler,
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.handler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutingFileHandlerTest {
+    @Test
+    void routeByLoggerPrefix(@TempDir final Path temp) throws IOException {
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", temp.resolve("{key}/app.%s.%03d.log").toString());
+        config.put("archiveDirectory", temp.resolve("{key}/archives").toString());
+        config.put("key", "loggerPrefix");
+        config.put("loggerPrefixDepth", "2");
+        config.put("maxOpenFiles", "1"); // each key change releases the previous file
+
+        final var handler = newHandler(config);
+        try {
+            handler.publish(record("com.tenant1.service", "first"));
+            handler.publish(record("com.tenant2.service", "second"));
+            handler.publish(record("com.tenant1.other", "third")); // reopened
+            handler.publish(record(null, "no logger"));
+        } finally {
+            handler.close();
+        }
+
+        final var date = LocalDate.now().toString();
+        assertEquals("first\nthird\n", Files.readString(temp.resolve("com.tenant1/app." + date + ".000.log")));
+        assertFalse(Files.exists(temp.resolve("com.tenant1/app." + date + ".001.log")));
+        assertEquals("second\n", Files.readString(temp.resolve("com.tenant2/app." + date + ".000.log")));
+        assertEquals("no logger\n", Files.readString(temp.resolve("default/app." + date + ".000.log")));
+    }
+
+    @Test
+    void routeByContext(@TempDir final Path temp) throws IOException {
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", temp.resolve("logs/{key}.%s.%03d.log").toString());
+        config.put("key", "context:tenant");
+        config.put("customEntriesMapper", TenantMapper.class.getName());
+
+        final var handler = newHandler(config);
+        try {
+            handler.publish(record("app", "tenant=acme"));
+            handler.publish(record("app", "tenant=../etc"));
+        } finally {
+            handler.close();
+        }
+
+        final var date = LocalDate.now().toString();
+        assertEquals("tenant=acme\n", Files.readString(temp.resolve("logs/acme." + date + ".000.log")));
+        assertEquals("tenant=../etc\n", Files.readString(temp.resolve("logs/_._etc." + date + ".000.log")));
+    }
+
+    @Test
+    void dropIdleHandlers(@TempDir final Path temp) throws IOException {
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", temp.resolve("{key}/app.%s.%03d.log").toString());
+        config.put("archiveDirectory", temp.resolve("{key}/archives").toString());
+        config.put("idleTimeout", "PT1M");
+        config.put("evictionInterval", "PT1M");
+
+        final var now = new AtomicReference<>(Instant.now());
+        final var handler = newHandler(config, new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneId.systemDefault();
+            }
+
+            @Override
+            public Clock withZone(final ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        });
+        try {
+            handler.publish(record("a", "a1"));
+            handler.publish(record("b", "b1"));
+            assertEquals(2, handler.handlerCount());
+
+            now.set(now.get().plus(2, MINUTES));
+            handler.publish(record("b", "b2")); // a is idle
+            assertEquals(1, handler.handlerCount());
+
+            handler.publish(record("a", "a2")); // recreated, continues the same file
+            assertEquals(2, handler.handlerCount());
+        } finally {
+            handler.close();
+        }
+
+        final var date = LocalDate.now().toString();
+        assertEquals("a1\na2\n", Files.readString(temp.resolve("a/app." + date + ".000.log")));
+        assertFalse(Files.exists(temp.resolve("a/app." + date + ".001.log")));
+        assertEquals("b1\nb2\n", Files.readString(temp.resolve("b/app." + date + ".000.log")));
+    }
+
+    @Test
+    void concurrentRoutes(@TempDir final Path temp) throws Exception {
+        final var config = new HashMap<String, String>();
+        config.put("filenamePattern", temp.resolve("{key}/app.%s.%03d.log").toString());
+        config.put("archiveDirectory", temp.resolve("{key}/archives").toString());
+        config.put("maxOpenFiles", "2");
+
+        final int keys = 6;
+        final int records = 500;
+        final var handler = newHandler(config);
+        try {
+            final var threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++) {
+                final int offset = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < records; i++) {
+                        handler.publish(record("key" + ((i + offset) % keys), "record"));
+                    }
+                });
+                threads[t].start();
+            }
+            for (final var thread : threads) {
+                thread.join();
+            }
+            assertEquals(keys, handler.handlerCount());
+            assertTrue(handler.openFileCount() <= 2, () -> "open files: " + handler.openFileCount());
+        } finally {
+            handler.close();
+        }
+
+        final var date = LocalDate.now().toString();
+        long lines = 0;
+        for (int k = 0; k < keys; k++) {
+            lines += Files.readAllLines(temp.resolve("key" + k + "/app." + date + ".000.log")).size();
+        }
+        assertEquals(8L * records, lines);
+    }
+
+    private static LogRecord record(final String logger, final String message) {
+        final var record = new LogRecord(Level.INFO, message);
+        record.setLoggerName(logger);
+        return record;
+    }
+
+    private static RoutingFileHandler newHandler(final Map<String, String> config) {
+        return newHandler(config, Clock.systemDefaultZone());
+    }
+
+    private static RoutingFileHandler newHandler(final Map<String, String> config, final Clock clock) {
+        final var handler = new RoutingFileHandler(clock) {
+            @Override
+            protected <T> T getProperty(final String name, final Function<String, T> mapper, final Supplier<T> defaultValue) {
+                final String s = config.get(name.substring(name.lastIndexOf('.') + 1));
+                return s != null ? mapper.apply(s) : defaultValue.get();
+            }
+        };
+        handler.setFormatter(new LocalFileHandlerTest.MessageOnlyEOLFormatter());
+        return handler;
+    }
+
+    public static class TenantMapper implements Function<LogRecord, Map<String, String>> {
+        @Override
+        public Map<String, String> apply(final LogRecord record) {
+            return Map.of("tenant", '"' + record.getMessage().substring("tenant=".length()) + '"');
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.reader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomIndexTest {
+    @Test
+    void falsePositiveRate(@TempDir final Path temp) throws IOException {
+        final var content = IntStream.range(0, 10_000)
+                .mapToObj(i -> "{\"level\":\"INFO\",\"traceId\":\"trace-" + i + "\",\"message\":\"\\\"quoted\\\" " + i + "\"}")
+                .collect(joining("\n", "not json\n", "\n"));
+        final var index = temp.resolve("app.log.gzip.bloom");
+        BloomIndex.write(new ByteArrayInputStream(content.getBytes(UTF_8)), UTF_8, List.of("traceId", "message"), 0.01, index);
+
+        final var bloom = BloomIndex.read(index);
+        assertTrue(IntStream.range(0, 10_000).allMatch(i -> bloom.mightContain("traceId", "trace-" + i)));
+        assertTrue(bloom.mightContain("message", "\"quoted\" 5"));
+        assertFalse(bloom.isIndexed("level"));
+
+        final long falsePositives = IntStream.range(10_000, 20_000).filter(i -> bloom.mightContain("traceId", "trace-" + i)).count();
+        assertTrue(falsePositives < 300, () -> "false positives: " + falsePositives);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.reader;
+
+import io.yupiik.logging.jul.formatter.JsonFormatter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.ZoneOffset.UTC;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarArchiveTest {
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "\n",
+            "not json\n\n{}\n{\"a\":1}",
+            "{\"a\":\"x\",\"b\":{\"c\":[1,\"}\"]}}\r\n{\"a\" : 1}\n{\"a\":\"\\\"é\\\"\",\"b\":true}\n",
+            "{\"timestamp\":\"2021-01-01T00:00:00.123456Z\",\"level\":\"INFO\"}\n{\"timestamp\":\"1970-01-01T00:00Z\",\"level\":\"INFO\"}\n"
+    })
+    void roundTrip(final String content) throws IOException {
+        final var bytes = content.getBytes(UTF_8);
+        assertArrayEquals(bytes, decode(encode(bytes)));
+    }
+
+    @Test
+    void roundTripJsonFormatter() throws IOException {
+        final var bytes = logs(10_000).getBytes(UTF_8);
+        final var columnar = encode(bytes);
+        assertArrayEquals(bytes, decode(columnar));
+
+        final var gzip = new ByteArrayOutputStream();
+        try (final var out = new GZIPOutputStream(gzip)) {
+            out.write(bytes);
+        }
+        assertTrue(columnar.length * 2 < gzip.size(), () -> "columnar=" + columnar.length + ", gzip=" + gzip.size());
+    }
+
+    @Test
+    void scan() throws IOException {
+        final var columnar = encode(logs(10_000).getBytes(UTF_8));
+
+        final var lines = new ArrayList<String>();
+        ColumnarArchive.scan(new ByteArrayInputStream(columnar), "level", "SEVERE", lines::add);
+        assertEquals(
+                IntStream.range(0, 10_000).filter(i -> i % 1000 == 0).mapToObj(i -> "{" +
+                        "\"timestamp\":\"" + OffsetDateTime.ofInstant(Instant.ofEpochMilli(1_600_000_000_000L + i * 3L), UTC) + "\"," +
+                        "\"level\":\"SEVERE\",\"logger\":\"app.logger" + (i % 7) + "\",\"method\":\"run\"," +
+                        "\"message\":\"message #" + i + "\",\"class\":\"app.Service\"}")
+                        .collect(toList()),
+                lines);
+
+        final var none = new ArrayList<String>();
+        ColumnarArchive.scan(new ByteArrayInputStream(columnar), "level", "FINEST", none::add);
+        assertEquals(List.of(), none);
+    }
+
+    private static String logs(final int count) {
+        final var formatter = new JsonFormatter();
+        return IntStream.range(0, count)
+                .mapToObj(i -> {
+                    final var record = new LogRecord(i % 1000 == 0 ? Level.SEVERE : Level.INFO, "message #" + i);
+                    record.setInstant(Instant.ofEpochMilli(1_600_000_000_000L + i * 3L));
+                    record.setLoggerName("app.logger" + (i % 7));
+                    record.setSourceClassName("app.Service");
+                    record.setSourceMethodName("run");
+                    return formatter.format(record);
+                })
+                .collect(joining());
+    }
+
+    private static byte[] encode(final byte[] bytes) throws IOException {
+        final var out = new ByteArrayOutputStream();
+        ColumnarArchive.encode(new ByteArrayInputStream(bytes), out, Deflater.DEFAULT_COMPRESSION);
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(final byte[] bytes) throws IOException {
+        try (final var in = ColumnarArchive.decode(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        }
+    }
+}
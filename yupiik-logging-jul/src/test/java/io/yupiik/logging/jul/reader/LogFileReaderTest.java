@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021-present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.logging.jul.reader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogFileReaderTest {
+    @Test
+    void readArchivesAndLogs(@TempDir final Path temp) throws IOException {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+        final var archives = Files.createDirectories(logs.resolve("archives"));
+        gzip(archives.resolve("app.2021-01-01.001.log.gzip"), "b1", "b2", "b3");
+        gzip(archives.resolve("app.2021-01-01.000.log.gzip"), "a1", "a2", "a3", "a4", "a5");
+        Files.writeString(logs.resolve("app.2021-01-02.000.log"), "d1\nd2\n");
+        Files.writeString(logs.resolve("app.2021-01-01.002.log"), "c1\n");
+        Files.writeString(logs.resolve("app.2021-01-01.002.log.tmp"), "ignored\n");
+
+        final var reader = new LogFileReader();
+        reader.setFilenamePattern(logs.resolve("app.%s.%03d.log").toString());
+        reader.setArchiveDirectory(archives);
+        reader.setChunkSize(2);
+        reader.setPrefetch(1);
+        try (final var lines = reader.lines()) {
+            assertEquals(
+                    List.of("a1", "a2", "a3", "a4", "a5", "b1", "b2", "b3", "c1", "d1", "d2"),
+                    lines.collect(toList()));
+        }
+    }
+
+    @Test
+    void archivingInProgress(@TempDir final Path temp) throws IOException {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+        final var archives = Files.createDirectories(logs.resolve("archives"));
+        gzip(archives.resolve("app.2021-01-01.000.log.gzip"), "a1"); // partial, the archive is being written
+        Files.writeString(logs.resolve("app.2021-01-01.000.log"), "a1\na2\n");
+
+        final var reader = new LogFileReader();
+        reader.setFilenamePattern(logs.resolve("app.%s.%03d.log").toString());
+        reader.setArchiveDirectory(archives);
+        try (final var lines = reader.lines()) {
+            assertEquals(List.of("a1", "a2"), lines.collect(toList()));
+        }
+    }
+
+    @Test
+    void closeWhileReading(@TempDir final Path temp) throws IOException {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+        gzip(logs.resolve("app.2021-01-01.000.log.gzip"), "a1");
+        Files.writeString(logs.resolve("app.2021-01-01.001.log"), "b1\n");
+        gzip(logs.resolve("app.2021-01-01.002.log.gzip"), "c1");
+
+        final var reader = new LogFileReader() {
+            @Override
+            protected InputStream openSegment(final Segment segment, final InputStream raw) throws IOException {
+                if (segment.getIndex() == 1) { // closed concurrently while the next segment gets prefetched
+                    close();
+                }
+                return super.openSegment(segment, raw);
+            }
+        };
+        reader.setFilenamePattern(logs.resolve("app.%s.%03d.log").toString());
+        reader.setPrefetch(1);
+        try (final var lines = reader.lines()) { // no RejectedExecutionException
+            assertEquals(List.of("a1", "b1"), lines.collect(toList()));
+        }
+    }
+
+    @Test
+    void follow(@TempDir final Path temp) throws Exception {
+        final var logs = Files.createDirectories(temp.resolve("logs"));
+        final var first = logs.resolve("app.2021-01-01.000.log");
+        Files.writeString(first, "a1\n");
+
+        final var reader = new LogFileReader();
+        reader.setFilenamePattern(logs.resolve("app.%s.%03d.log").toString());
+        reader.setFollow(true);
+        reader.setPollInterval(Duration.ofMillis(10));
+
+        final var collected = new CopyOnWriteArrayList<String>();
+        final var thread = new Thread(() -> {
+            try (final var lines = reader.lines()) {
+                lines.forEach(collected::add);
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        try {
+            await(() -> collected.size() == 1);
+            Files.writeString(first, "a2\n", APPEND);
+            await(() -> collected.size() == 2);
+
+            // rotation
+            Files.writeString(logs.resolve("app.2021-01-01.001.log"), "b1\n");
+            await(() -> collected.size() == 3);
+            Files.writeString(logs.resolve("app.2021-01-01.001.log"), "b2\n", APPEND);
+            await(() -> collected.size() == 4);
+        } finally {
+            reader.close();
+            thread.join(TimeUnit.MINUTES.toMillis(1));
+        }
+        assertEquals(List.of("a1", "a2", "b1", "b2"), collected);
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < end, "timeout");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void gzip(final Path file, final String... lines) throws IOException {
+        try (final var out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(IntStream.range(0, lines.length).mapToObj(i -> lines[i] + '\n').collect(joining()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}